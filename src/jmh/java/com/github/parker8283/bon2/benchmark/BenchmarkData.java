@@ -0,0 +1,81 @@
+package com.github.parker8283.bon2.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import com.github.parker8283.bon2.data.IErrorHandler;
+import com.github.parker8283.bon2.data.IProgressListener;
+import com.github.parker8283.bon2.srg.Repo;
+import com.github.parker8283.bon2.util.SyntheticJarGenerator;
+
+/**
+ * Inputs shared by the benchmarks: a private copy of a mapping directory, and a jar whose classes use SRG names from it.
+ */
+public class BenchmarkData {
+    /** The bundled mappings, relative to the project directory the benchmarks run in. */
+    public static final String DEFAULT_MAPPINGS = "mappings/1.12.2";
+    /** Classes in the generated jar. Per-class benchmarks divide by this, so the GC profiler reports allocation per class. */
+    public static final int CLASSES = 2000;
+
+    public static final IProgressListener NO_PROGRESS = new IProgressListener() {
+        @Override
+        public void start(int max, String label) {
+        }
+
+        @Override
+        public void startWithoutProgress(String label) {
+        }
+
+        @Override
+        public void setProgress(int value) {
+        }
+
+        @Override
+        public void setMax(int max) {
+        }
+
+        @Override
+        public void setLabel(String label) {
+        }
+    };
+
+    public static final IErrorHandler NO_ERRORS = (message, warning) -> {
+        throw new IllegalStateException("Benchmark input failed to remap: " + message);
+    };
+
+    /**
+     * Copies the CSVs of {@code mappingsDir} to a temporary directory, so the mapping cache written next to them never
+     * ends up in the source tree.
+     */
+    public static File copyMappings(String mappingsDir) throws IOException {
+        File copy = Files.createTempDirectory("bon2-bench-mappings").toFile();
+        for(String csv : new String[] {Repo.FIELDS_CSV, Repo.METHODS_CSV, Repo.PARAMS_CSV}) {
+            File file = new File(mappingsDir, csv);
+            if(file.isFile()) {
+                Files.copy(file.toPath(), new File(copy, csv).toPath());
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Writes a jar of {@link #CLASSES} classes that use SRG names from {@code mappingsDir} to a temporary file, see
+     * {@link SyntheticJarGenerator}. Every tenth entry is a resource.
+     */
+    public static File createJar(File mappingsDir) throws IOException {
+        File jar = File.createTempFile("bon2-bench-", ".jar");
+        new SyntheticJarGenerator(mappingsDir).setClasses(CLASSES).setResourcesPerClass(1 / 9.0).setThreads(1).generate(jar, NO_PROGRESS);
+        return jar;
+    }
+
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if(children != null) {
+            for(File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,118 @@
+package com.github.parker8283.bon2.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.parker8283.bon2.io.ZipArchive;
+import com.github.parker8283.bon2.srg.MappingTable;
+import com.github.parker8283.bon2.srg.Repo;
+import com.github.parker8283.bon2.util.IOUtils;
+import com.github.parker8283.bon2.util.Remapper;
+import com.google.common.collect.Lists;
+
+/**
+ * The per-class steps of the tree engine: {@link IOUtils#readClassFromBytes}, {@link Remapper#remapClass(ClassNode, MappingTable)}
+ * and {@link IOUtils#writeClassToBytes}. Scores and the allocation the GC profiler reports are per class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassBenchmark {
+    @Param(BenchmarkData.DEFAULT_MAPPINGS)
+    public String mappingsDir;
+
+    private File mappingsCopy;
+    private File jar;
+    private MappingTable mappings;
+    private List<byte[]> classBytes;
+    private List<ClassNode> remapped;
+    private List<ClassNode> toRemap;
+
+    @Setup(Level.Trial)
+    public void createInput() throws IOException {
+        mappingsCopy = BenchmarkData.copyMappings(mappingsDir);
+        mappings = Repo.loadMappings(mappingsCopy, BenchmarkData.NO_PROGRESS);
+        jar = BenchmarkData.createJar(mappingsCopy);
+        classBytes = Lists.newArrayList();
+        try(ZipArchive zip = new ZipArchive(jar)) {
+            for(ZipArchive.Entry entry : zip.getEntries()) {
+                if(entry.getName().endsWith(".class")) {
+                    classBytes.add(zip.read(entry));
+                }
+            }
+        }
+        remapped = readAll();
+        for(ClassNode classNode : remapped) {
+            Remapper.remapClass(classNode, mappings);
+        }
+    }
+
+    /**
+     * Remapping changes the nodes in place, so every call gets freshly read ones.
+     */
+    @Setup(Level.Invocation)
+    public void readClassesToRemap() {
+        toRemap = readAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteInput() {
+        jar.delete();
+        BenchmarkData.delete(mappingsCopy);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.CLASSES)
+    public void readClassFromBytes(Blackhole blackhole) {
+        for(byte[] bytes : classBytes) {
+            blackhole.consume(IOUtils.readClassFromBytes(bytes));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.CLASSES)
+    public List<ClassNode> remapClass() {
+        for(ClassNode classNode : toRemap) {
+            Remapper.remapClass(classNode, mappings);
+        }
+        return toRemap;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkData.CLASSES)
+    public void writeClassToBytes(Blackhole blackhole) {
+        for(ClassNode classNode : remapped) {
+            blackhole.consume(IOUtils.writeClassToBytes(classNode));
+        }
+    }
+
+    private List<ClassNode> readAll() {
+        List<ClassNode> classes = Lists.newArrayListWithCapacity(classBytes.size());
+        for(byte[] bytes : classBytes) {
+            classes.add(IOUtils.readClassFromBytes(bytes));
+        }
+        return classes;
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.parker8283.bon2.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.parker8283.bon2.BON2Impl;
+import com.github.parker8283.bon2.data.MappingVersion;
+import com.github.parker8283.bon2.data.RemapEngine;
+import com.github.parker8283.bon2.data.RemapOptions;
+
+/**
+ * {@link BON2Impl#remap} from jar to jar, per engine. The mapping table stays loaded between calls, as it does in a
+ * batch, watch or server run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EndToEndBenchmark {
+    @Param(BenchmarkData.DEFAULT_MAPPINGS)
+    public String mappingsDir;
+
+    @Param({"streaming", "constant-pool", "tree"})
+    public String engine;
+
+    @Param("1")
+    public int threads;
+
+    private File mappingsCopy;
+    private File jar;
+    private File output;
+    private MappingVersion mappings;
+    private RemapOptions options;
+
+    @Setup(Level.Trial)
+    public void createInput() throws IOException {
+        mappingsCopy = BenchmarkData.copyMappings(mappingsDir);
+        mappings = new MappingVersion("benchmark", mappingsCopy);
+        jar = BenchmarkData.createJar(mappingsCopy);
+        output = File.createTempFile("bon2-bench-out-", ".jar");
+        options = new RemapOptions().setEngine(RemapEngine.getByName(engine)).setThreads(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteInput() {
+        jar.delete();
+        output.delete();
+        BenchmarkData.delete(mappingsCopy);
+    }
+
+    @Benchmark
+    public long remap() throws IOException {
+        BON2Impl.remap(jar, output, mappings, options, BenchmarkData.NO_ERRORS, BenchmarkData.NO_PROGRESS);
+        return output.length();
+    }
+}
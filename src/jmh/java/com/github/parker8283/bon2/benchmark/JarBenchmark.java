@@ -0,0 +1,103 @@
+package com.github.parker8283.bon2.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.parker8283.bon2.srg.ClassCollection;
+import com.github.parker8283.bon2.srg.MappingTable;
+import com.github.parker8283.bon2.srg.Repo;
+import com.github.parker8283.bon2.util.JarUtils;
+import com.github.parker8283.bon2.util.Remapper;
+
+/**
+ * The jar-level phases of the tree engine: {@link JarUtils#readFromJar}, {@link Remapper#remap} and
+ * {@link JarUtils#writeToJar}, each on the whole generated jar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JarBenchmark {
+    @Param(BenchmarkData.DEFAULT_MAPPINGS)
+    public String mappingsDir;
+
+    @Param("1")
+    public int threads;
+
+    private File mappingsCopy;
+    private File jar;
+    private File output;
+    private MappingTable mappings;
+    private ClassCollection remapped;
+    private ClassCollection toRemap;
+
+    @Setup(Level.Trial)
+    public void createInput() throws IOException {
+        mappingsCopy = BenchmarkData.copyMappings(mappingsDir);
+        mappings = Repo.loadMappings(mappingsCopy, BenchmarkData.NO_PROGRESS);
+        jar = BenchmarkData.createJar(mappingsCopy);
+        output = File.createTempFile("bon2-bench-out-", ".jar");
+        remapped = Remapper.remap(readJar(), mappings, threads, BenchmarkData.NO_PROGRESS);
+    }
+
+    /**
+     * Remapping changes the classes in place, so every call gets a freshly read collection.
+     */
+    @Setup(Level.Invocation)
+    public void readJarToRemap() throws IOException {
+        toRemap = readJar();
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeJarToRemap() throws IOException {
+        toRemap.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteInput() throws IOException {
+        remapped.close();
+        jar.delete();
+        output.delete();
+        BenchmarkData.delete(mappingsCopy);
+    }
+
+    @Benchmark
+    public int readFromJar() throws IOException {
+        try(ClassCollection classes = readJar()) {
+            return classes.getClasses().size();
+        }
+    }
+
+    @Benchmark
+    public ClassCollection remap() {
+        return Remapper.remap(toRemap, mappings, threads, BenchmarkData.NO_PROGRESS);
+    }
+
+    @Benchmark
+    public long writeToJar() throws IOException {
+        JarUtils.writeToJar(remapped, output, threads, Deflater.DEFAULT_COMPRESSION, BenchmarkData.NO_PROGRESS);
+        return output.length();
+    }
+
+    private ClassCollection readJar() throws IOException {
+        return JarUtils.readFromJar(jar, threads, mappings, BenchmarkData.NO_ERRORS, BenchmarkData.NO_PROGRESS);
+    }
+}
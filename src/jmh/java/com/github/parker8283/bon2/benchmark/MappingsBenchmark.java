@@ -0,0 +1,66 @@
+package com.github.parker8283.bon2.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.parker8283.bon2.srg.MappingCache;
+import com.github.parker8283.bon2.srg.MappingTable;
+import com.github.parker8283.bon2.srg.Repo;
+
+/**
+ * {@link Repo#loadMappings}, both from the CSVs, as on a first run, and from the {@link MappingCache} written by it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingsBenchmark {
+    @Param(BenchmarkData.DEFAULT_MAPPINGS)
+    public String mappingsDir;
+
+    /** "csv" parses the CSVs every time, "cache" reads the mapping cache. */
+    @Param({"csv", "cache"})
+    public String source;
+
+    private File mappings;
+
+    @Setup(Level.Trial)
+    public void copyMappings() throws IOException {
+        mappings = BenchmarkData.copyMappings(mappingsDir);
+        Repo.loadMappings(mappings, BenchmarkData.NO_PROGRESS); // writes the cache
+    }
+
+    @Setup(Level.Invocation)
+    public void dropCache() {
+        if(source.equals("csv")) {
+            new File(mappings, MappingCache.FILE_NAME).delete();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteMappings() {
+        BenchmarkData.delete(mappings);
+    }
+
+    @Benchmark
+    public MappingTable loadMappings() throws IOException {
+        return Repo.loadMappings(mappings, BenchmarkData.NO_PROGRESS);
+    }
+}
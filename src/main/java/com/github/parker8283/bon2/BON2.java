@@ -1,22 +1,45 @@
 package com.github.parker8283.bon2;
 
 import java.awt.EventQueue;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
 
 import javax.swing.UIManager;
 
+import com.github.parker8283.bon2.cli.BatchRemapper;
 import com.github.parker8283.bon2.cli.CLIErrorHandler;
 import com.github.parker8283.bon2.cli.CLIProgressListener;
+import com.github.parker8283.bon2.cli.MetricsWriter;
+import com.github.parker8283.bon2.cli.RemapServer;
+import com.github.parker8283.bon2.cli.WatchRemapper;
 import com.github.parker8283.bon2.data.BONFiles;
 import com.github.parker8283.bon2.data.IErrorHandler;
 import com.github.parker8283.bon2.data.LibraryManager;
 import com.github.parker8283.bon2.data.MappingManager;
 import com.github.parker8283.bon2.data.MappingVersion;
-import com.github.parker8283.bon2.data.VersionLookup;
+import com.github.parker8283.bon2.data.RemapEngine;
+import com.github.parker8283.bon2.data.RemapOptions;
 import com.github.parker8283.bon2.exception.InvalidMappingsVersionException;
+import com.github.parker8283.bon2.io.ZipArchiveWriter;
 import com.github.parker8283.bon2.util.BONUtils;
+import com.github.parker8283.bon2.util.CacheStats;
+import com.github.parker8283.bon2.util.ClassCache;
+import com.github.parker8283.bon2.util.JarCache;
+import com.github.parker8283.bon2.util.JfrEvents;
+import com.github.parker8283.bon2.util.MetricsRegistry;
+import com.github.parker8283.bon2.util.RemapMetrics;
+import com.github.parker8283.bon2.util.SyntheticJarGenerator;
 
 import joptsimple.OptionException;
 import joptsimple.OptionParser;
@@ -24,6 +47,9 @@ import joptsimple.OptionSet;
 
 public class BON2 {
     public static final String VERSION = "Bearded Octo Nemesis v${DEV} by Parker8283. BON v1 by immibis.";
+    /** Passed as --inputJar or --outputJar to read the jar from stdin or write it to stdout. */
+    private static final String STDIO = "-";
+    private static final String DEFAULT_PROFILE = "bon2.jfr";
 
     public static void main(String[] args) throws Exception {
         if(args.length > 0) {
@@ -37,12 +63,46 @@ public class BON2 {
         OptionParser parser = new OptionParser();
         parser.accepts("help", "Prints this help menu").forHelp();
         parser.accepts("version", "Prints the version string").forHelp();
-        parser.accepts("inputJar", "The jar file to deobfuscate").withRequiredArg();
-        parser.accepts("outputJar", "The location and name of the output jar. Defaults to same dir and appends \"-deobf\"").withRequiredArg();
+        parser.accepts("inputJar", "The jar file to deobfuscate, or a directory of classes and resources to remap into another directory. \"-\" reads the jar from stdin. Can be repeated, or be a glob with * and ? such as \"mods/*.jar\", to remap several jars at once; an existing file is always taken literally").withRequiredArg();
+        parser.accepts("outputJar", "The location and name of the output jar, or the output directory for a directory input. \"-\" writes the jar to stdout. Defaults to same dir and appends \"-deobf\", or to stdout when reading from stdin").withRequiredArg();
+        parser.accepts("inputDir", "Remap every jar in this directory").withRequiredArg();
+        parser.accepts("inputList", "Remap every jar listed in this file, one path per line").withRequiredArg();
+        parser.accepts("outputDir", "Where the remapped jars go when remapping several, keeping their names. Defaults to next to each input, with \"-deobf\" appended").withRequiredArg();
+        parser.accepts("jobs", "How many jars to remap at the same time when remapping several, or requests to serve at once with --server. Defaults to the number of available processors").withRequiredArg().ofType(Integer.class);
+        parser.accepts("watch", "Keep remapping the jars in this directory into --outputDir as they are added or changed, and delete the outputs of removed jars").withRequiredArg();
+        parser.accepts("server", "Keep running and remap jars sent to a local HTTP endpoint, see the README. --mappingsVer/--mappingsDir become the default mappings of a request");
+        parser.accepts("token", "The token every --server request must send as \"Authorization: Bearer <token>\". Defaults to a random one written to --tokenFile").withRequiredArg();
+        parser.accepts("tokenFile", "Where --server writes the token it generated, readable only by its owner. Defaults to ~/.bon2/server-<port>.token").withRequiredArg();
+        parser.accepts("port", "The port --server listens on, on the loopback interface. Defaults to " + RemapServer.DEFAULT_PORT).withRequiredArg().ofType(Integer.class);
         parser.accepts("mappingsVer", "The version of the mappings to use. Must exist in Gradle cache or bundled mappings. Format: \"stable_39\" or \"1.12.2\"").withRequiredArg();
         parser.accepts("mappingsDir", "Custom directory containing mapping files (fields.csv, methods.csv)").withRequiredArg();
         parser.accepts("download", "Download mappings. Use with --mappingsVer or 'all' to download all available mappings");
         parser.accepts("list", "List all available mappings (bundled + Gradle cache)");
+        parser.accepts("threads", "Number of worker threads to remap with. Defaults to the number of available processors").withRequiredArg().ofType(Integer.class);
+        parser.accepts("compression", "Output compression: \"stored\" for no compression, or a deflate level from 1 (fastest) to 9 (smallest)").withRequiredArg();
+        parser.accepts("metrics-out", "Write wall and CPU time, bytes, classes/s, mapping hits and misses and peak heap of each remap phase to this file. See --metrics-format").withRequiredArg();
+        parser.accepts("metrics-format", "\"json\" (default) appends one JSON object per remapped jar, \"prometheus\" rewrites the file with the totals so far in the Prometheus text format after each one, for --watch and --server").withRequiredArg();
+        parser.accepts("profile", "Record a Java Flight Recorder profile of the run, with events for every remap phase, jar and slow class, and write it to this file on exit (Java 11+). Defaults to " + DEFAULT_PROFILE).withOptionalArg();
+        parser.accepts("profileThreshold", "How many milliseconds reading, remapping or writing a class must take to be recorded by --profile. Defaults to " + JfrEvents.DEFAULT_CLASS_THRESHOLD_MILLIS).withRequiredArg().ofType(Integer.class);
+        parser.accepts("maxMemory", "Limit in megabytes for the heap the jar entries being remapped may hold at once; bigger outputs are spilled to temporary files. Every engine then remaps entry by entry, so the heap needed no longer grows with the jar").withRequiredArg().ofType(Integer.class);
+        parser.accepts("classCache", "Keep remapped classes on disk and reuse them when the same class is remapped again, e.g. in a rebuilt mod. Takes an optional directory, defaults to " + BONFiles.BON_CLASS_CACHE_FOLDER).withOptionalArg();
+        parser.accepts("classCacheSize", "How many megabytes the class cache may use before the least recently used classes are evicted. Defaults to " + RemapOptions.DEFAULT_CLASS_CACHE_SIZE / (1024 * 1024)).withRequiredArg().ofType(Integer.class);
+        parser.accepts("jarCache", "Keep complete output jars on disk and reuse them when the same jar is remapped again with the same mappings and options. Takes an optional directory, defaults to " + BONFiles.BON_JAR_CACHE_FOLDER).withOptionalArg();
+        parser.accepts("jarCacheSize", "How many megabytes the jar cache may use before the least recently used jars are evicted. Defaults to " + RemapOptions.DEFAULT_JAR_CACHE_SIZE / (1024 * 1024)).withRequiredArg().ofType(Integer.class);
+        parser.accepts("noCache", "Bypass the class and jar caches for this run, even if they are enabled");
+        parser.accepts("cacheStats", "Print the size and hit rate of the class and jar caches (the default ones, or those given with --classCache/--jarCache)");
+        parser.accepts("engine", "Remap engine: \"streaming\" (default, ClassVisitor pipeline), \"constant-pool\" (rewrites names in the class file directly, no ASM) or \"tree\" (ClassNode based)").withRequiredArg();
+        // Synthetic jar generator options
+        parser.accepts("generate", "Write a synthetic jar that references SRG names from --mappingsDir/--mappingsVer, for benchmarks and scale tests, to this file").withRequiredArg();
+        parser.accepts("genClasses", "Classes in the generated jar. Defaults to 1000").withRequiredArg().ofType(Integer.class);
+        parser.accepts("genFields", "Fields per generated class. Defaults to 8").withRequiredArg().ofType(Integer.class);
+        parser.accepts("genMethods", "Methods per generated class. Defaults to 8").withRequiredArg().ofType(Integer.class);
+        parser.accepts("genInstructions", "Instructions per generated method. Defaults to 32").withRequiredArg().ofType(Integer.class);
+        parser.accepts("genMix", "Relative weights of the generated instructions. Defaults to \"field=4,invoke=4,constant=1,arithmetic=2\"").withRequiredArg();
+        parser.accepts("genSrgDensity", "How likely a generated name or reference is an SRG name, from 0 to 1. Defaults to 0.75").withRequiredArg().ofType(Double.class);
+        parser.accepts("genResources", "Generated resources per class, e.g. 0.5 for one every second class. Defaults to 0.1").withRequiredArg().ofType(Double.class);
+        parser.accepts("genResourceSize", "Average size of a generated resource in kilobytes. Defaults to 4").withRequiredArg().ofType(Integer.class);
+        parser.accepts("genSeed", "Seed of the generated jar, the same seed and settings always give the same jar. Defaults to 0").withRequiredArg().ofType(Long.class);
         // Library management options
         parser.accepts("download-libs", "Download common libraries. Use with --lib or 'all' to download all");
         parser.accepts("list-libs", "List all available libraries for download");
@@ -119,6 +179,81 @@ public class BON2 {
                 System.exit(0);
             }
             
+            // Handle --cacheStats command
+            if(options.has("cacheStats")) {
+                File classCacheDir = options.hasArgument("classCache") ? new File((String) options.valueOf("classCache")) : BONFiles.BON_CLASS_CACHE_FOLDER;
+                File jarCacheDir = options.hasArgument("jarCache") ? new File((String) options.valueOf("jarCache")) : BONFiles.BON_JAR_CACHE_FOLDER;
+                printCacheStats("Class cache", classCacheDir, ClassCache.getStats(classCacheDir));
+                printCacheStats("Jar cache", jarCacheDir, JarCache.getStats(jarCacheDir));
+                System.exit(0);
+            }
+
+            // Handle --profile, before any work that should show up in the recording
+            if(options.has("profile")) {
+                File profile = new File(options.hasArgument("profile") ? (String) options.valueOf("profile") : DEFAULT_PROFILE);
+                int threshold = options.has("profileThreshold") ? (Integer) options.valueOf("profileThreshold") : (int) JfrEvents.DEFAULT_CLASS_THRESHOLD_MILLIS;
+                if (threshold < 0) {
+                    System.err.println("--profileThreshold can't be negative");
+                    System.exit(1);
+                }
+                if (JfrEvents.startRecording(profile, threshold)) {
+                    System.err.println("Recording a flight recorder profile to " + profile.getAbsolutePath() + " on exit");
+                } else {
+                    System.err.println("--profile needs Java Flight Recorder (Java 11 or newer), continuing without it");
+                }
+            }
+
+            // Handle --generate command
+            if(options.has("generate")) {
+                MappingVersion mapping = options.has("mappingsDir") ? new MappingVersion("custom", new File((String) options.valueOf("mappingsDir")))
+                        : options.has("mappingsVer") ? BONUtils.findMappings((String) options.valueOf("mappingsVer"), mappingManager) : null;
+                if (mapping == null) {
+                    System.err.println("--generate needs --mappingsDir or a valid --mappingsVer to take SRG names from");
+                    System.exit(1);
+                }
+                File output = new File((String) options.valueOf("generate"));
+                try {
+                    SyntheticJarGenerator generator = new SyntheticJarGenerator(mapping.getSrgs());
+                    if (options.has("genClasses")) {
+                        generator.setClasses((Integer) options.valueOf("genClasses"));
+                    }
+                    if (options.has("genFields")) {
+                        generator.setFieldsPerClass((Integer) options.valueOf("genFields"));
+                    }
+                    if (options.has("genMethods")) {
+                        generator.setMethodsPerClass((Integer) options.valueOf("genMethods"));
+                    }
+                    if (options.has("genInstructions")) {
+                        generator.setInstructionsPerMethod((Integer) options.valueOf("genInstructions"));
+                    }
+                    if (options.has("genMix")) {
+                        generator.setInstructionMix((String) options.valueOf("genMix"));
+                    }
+                    if (options.has("genSrgDensity")) {
+                        generator.setSrgDensity((Double) options.valueOf("genSrgDensity"));
+                    }
+                    if (options.has("genResources")) {
+                        generator.setResourcesPerClass((Double) options.valueOf("genResources"));
+                    }
+                    if (options.has("genResourceSize")) {
+                        generator.setResourceSize((Integer) options.valueOf("genResourceSize") * 1024);
+                    }
+                    if (options.has("genSeed")) {
+                        generator.setSeed((Long) options.valueOf("genSeed"));
+                    }
+                    if (options.has("threads")) {
+                        generator.setThreads((Integer) options.valueOf("threads"));
+                    }
+                    long start = System.nanoTime();
+                    long size = generator.generate(output, new CLIProgressListener());
+                    log(String.format(Locale.ROOT, "Generated %s: %.1f MB in %d ms", output, size / (1024.0 * 1024.0), (System.nanoTime() - start) / 1000000));
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                    System.exit(1);
+                }
+                System.exit(0);
+            }
+
             // Handle --download command
             if(options.has("download")) {
                 if (options.has("mappingsVer")) {
@@ -147,18 +282,42 @@ public class BON2 {
                 System.exit(0);
             }
             
-            // Normal deobfuscation mode - require inputJar and mappingsVer
-            if (!options.has("inputJar") || !options.has("mappingsVer")) {
-                System.err.println("Error: --inputJar and --mappingsVer are required for deobfuscation");
+            // Normal deobfuscation mode - require an input and mappingsVer, unless serving remap requests
+            boolean server = options.has("server");
+            boolean watch = options.has("watch");
+            boolean hasInput = options.has("inputJar") || options.has("inputDir") || options.has("inputList");
+            if (watch && (hasInput || server || !options.has("outputDir"))) {
+                System.err.println("--watch takes the directory to watch and needs --outputDir, but no other inputs");
+                System.exit(1);
+            }
+            if (!server && ((!hasInput && !watch) || !options.has("mappingsVer"))) {
+                System.err.println("Error: --inputJar (or --inputDir/--inputList/--watch) and --mappingsVer are required for deobfuscation");
                 parser.printHelpOn(System.err);
                 System.exit(1);
             }
 
-            String inputJar = (String)options.valueOf("inputJar");
-            String outputJar = options.has("outputJar") ? (String)options.valueOf("outputJar") : inputJar.replace(".jar", "-deobf.jar");
+            List<String> inputJars = options.valuesOf("inputJar").stream().map(String.class::cast).collect(Collectors.toList());
+            boolean batch = !server && !watch && (options.has("inputDir") || options.has("inputList") || options.has("outputDir") || inputJars.size() > 1 || BatchRemapper.isGlob(inputJars.get(0)));
+            String inputJar = batch || server || watch ? null : inputJars.get(0);
+            String outputJar = inputJar == null ? null : options.has("outputJar") ? (String)options.valueOf("outputJar") : STDIO.equals(inputJar) ? STDIO : BONUtils.getDefaultOutput(new File(inputJar)).getPath();
+            if(STDIO.equals(outputJar)) {
+                System.setOut(System.err); // stdout carries the jar, everything else goes to stderr
+            }
             String mappingsVer = (String)options.valueOf("mappingsVer");
 
-            if(!new File(inputJar).exists()) {
+            if(batch && options.has("outputJar")) {
+                System.err.println("--outputJar can only be used with a single input jar, use --outputDir instead");
+                System.exit(1);
+            }
+            if(server && hasInput) {
+                System.err.println("--server takes its input jars from requests, not from the command line");
+                System.exit(1);
+            }
+            if(options.has("metrics-out") && (STDIO.equals(inputJar) || STDIO.equals(outputJar))) {
+                System.err.println("--metrics-out can't be used when remapping through stdin or stdout");
+                System.exit(1);
+            }
+            if(inputJar != null && !STDIO.equals(inputJar) && !new File(inputJar).exists()) {
                 System.err.println("The provided inputJar does not exist");
                 new FileNotFoundException(inputJar).printStackTrace();
                 System.exit(1);
@@ -178,27 +337,12 @@ public class BON2 {
                 }
             }
             
-            // Try bundled/downloaded mappings first
-            if (mapping == null) {
-                File bundledDir = mappingManager.getMappingDir(mappingsVer);
-                if (bundledDir != null) {
-                    mapping = new MappingVersion(mappingsVer, bundledDir);
-                }
-            }
-            
-            // Fall back to Gradle cache
-            if (mapping == null) {
-                VersionLookup.INSTANCE.refresh();
-                List<MappingVersion> mappings = BONUtils.buildValidMappings();
-                for (MappingVersion m : mappings) {
-                    if (m.getVersion().contains(mappingsVer)) {
-                        mapping = m;
-                        break;
-                    }
-                }
+            // Try bundled/downloaded mappings first, then the Gradle cache
+            if (mapping == null && mappingsVer != null) {
+                mapping = BONUtils.findMappings(mappingsVer, mappingManager);
             }
             
-            if (mapping == null) {
+            if (mapping == null && (!server || mappingsVer != null)) {
                 System.err.println("The provided mappingsVer are invalid.");
                 System.err.println("Options:");
                 System.err.println("  1. Use --download to download mappings first");
@@ -209,6 +353,168 @@ public class BON2 {
                 System.exit(1);
             }
             
+            RemapOptions remapOptions = new RemapOptions();
+            if (options.has("engine")) {
+                RemapEngine engine = RemapEngine.getByName((String) options.valueOf("engine"));
+                if (engine == null) {
+                    System.err.println("Unknown engine: " + options.valueOf("engine"));
+                    System.exit(1);
+                }
+                remapOptions.setEngine(engine);
+            }
+            if (options.has("threads")) {
+                int threads = (Integer) options.valueOf("threads");
+                if (threads < 1) {
+                    System.err.println("--threads must be at least 1");
+                    System.exit(1);
+                }
+                remapOptions.setThreads(threads);
+            }
+            if (options.has("compression")) {
+                String compression = (String) options.valueOf("compression");
+                if ("stored".equalsIgnoreCase(compression)) {
+                    remapOptions.setCompressionLevel(ZipArchiveWriter.STORED);
+                } else if (compression.matches("[1-9]")) {
+                    remapOptions.setCompressionLevel(Integer.parseInt(compression));
+                } else {
+                    System.err.println("--compression must be \"stored\" or a level from 1 to 9");
+                    System.exit(1);
+                }
+            }
+
+            if (options.has("maxMemory")) {
+                int size = (Integer) options.valueOf("maxMemory");
+                if (size < 1) {
+                    System.err.println("--maxMemory must be at least 1");
+                    System.exit(1);
+                }
+                remapOptions.setMaxMemory(size * 1024L * 1024);
+            }
+            if (options.has("classCache")) {
+                remapOptions.setClassCacheDir(options.hasArgument("classCache") ? new File((String) options.valueOf("classCache")) : BONFiles.BON_CLASS_CACHE_FOLDER);
+            }
+            if (options.has("classCacheSize")) {
+                int size = (Integer) options.valueOf("classCacheSize");
+                if (size < 1) {
+                    System.err.println("--classCacheSize must be at least 1");
+                    System.exit(1);
+                }
+                remapOptions.setClassCacheSize(size * 1024L * 1024);
+            }
+            if (options.has("jarCache")) {
+                remapOptions.setJarCacheDir(options.hasArgument("jarCache") ? new File((String) options.valueOf("jarCache")) : BONFiles.BON_JAR_CACHE_FOLDER);
+            }
+            if (options.has("jarCacheSize")) {
+                int size = (Integer) options.valueOf("jarCacheSize");
+                if (size < 1) {
+                    System.err.println("--jarCacheSize must be at least 1");
+                    System.exit(1);
+                }
+                remapOptions.setJarCacheSize(size * 1024L * 1024);
+            }
+            if (options.has("noCache")) {
+                remapOptions.disableCaches();
+            }
+
+            MetricsWriter metricsWriter = null;
+            if (options.has("metrics-out")) {
+                MetricsWriter.Format format = MetricsWriter.Format.JSON;
+                if (options.has("metrics-format")) {
+                    format = MetricsWriter.Format.getByName((String) options.valueOf("metrics-format"));
+                    if (format == null) {
+                        System.err.println("--metrics-format must be \"json\" or \"prometheus\"");
+                        System.exit(1);
+                    }
+                }
+                try {
+                    metricsWriter = new MetricsWriter(new File((String) options.valueOf("metrics-out")), format, new MetricsRegistry());
+                } catch(IOException e) {
+                    System.err.println("Could not create the --metrics-out file: " + e.getMessage());
+                    System.exit(1);
+                }
+            }
+
+            if (server) {
+                int jobs = options.has("jobs") ? (Integer) options.valueOf("jobs") : RemapOptions.DEFAULT_THREADS;
+                int port = options.has("port") ? (Integer) options.valueOf("port") : RemapServer.DEFAULT_PORT;
+                if (jobs < 1) {
+                    System.err.println("--jobs must be at least 1");
+                    System.exit(1);
+                }
+                log(VERSION);
+                log("Mappings:        " + (mapping != null ? mapping.getVersion() : "none, every request names its own"));
+                log("Engine:          " + remapOptions.getEngine().name().toLowerCase(Locale.ROOT));
+                log("Threads:         " + remapOptions.getThreads());
+                log("Jobs:            " + jobs);
+                if (metricsWriter != null) {
+                    log("Metrics:         " + metricsWriter.getFile());
+                }
+                try {
+                    new RemapServer(mapping, remapOptions, jobs, mappingManager).setMetrics(metricsWriter)
+                            .setToken((String) options.valueOf("token"))
+                            .setTokenFile(options.has("tokenFile") ? new File((String) options.valueOf("tokenFile")) : null)
+                            .run(port);
+                    System.exit(0);
+                } catch(Exception e) {
+                    logErr(e.getMessage(), e);
+                    System.exit(1);
+                }
+            }
+
+            if (watch) {
+                File watchDir = new File((String) options.valueOf("watch"));
+                File outputDir = new File((String) options.valueOf("outputDir"));
+                log(VERSION);
+                log("Watching:        " + watchDir);
+                log("Output Dir:      " + outputDir);
+                log("Mappings:        " + mapping.getVersion());
+                log("Engine:          " + remapOptions.getEngine().name().toLowerCase(Locale.ROOT));
+                log("Threads:         " + remapOptions.getThreads());
+                if (metricsWriter != null) {
+                    log("Metrics:         " + metricsWriter.getFile());
+                }
+                try {
+                    new WatchRemapper(mapping, remapOptions).setMetrics(metricsWriter).run(watchDir, outputDir);
+                } catch(Exception e) {
+                    logErr(e.getMessage(), e);
+                    System.exit(1);
+                }
+            }
+
+            if (batch) {
+                int jobs = options.has("jobs") ? (Integer) options.valueOf("jobs") : RemapOptions.DEFAULT_THREADS;
+                if (jobs < 1) {
+                    System.err.println("--jobs must be at least 1");
+                    System.exit(1);
+                }
+                File outputDir = options.has("outputDir") ? new File((String) options.valueOf("outputDir")) : null;
+                try {
+                    List<File> inputs = BatchRemapper.collectInputs(inputJars,
+                            options.has("inputDir") ? new File((String) options.valueOf("inputDir")) : null,
+                            options.has("inputList") ? new File((String) options.valueOf("inputList")) : null);
+                    if (inputs.isEmpty()) {
+                        System.err.println("No input jars found");
+                        System.exit(1);
+                    }
+                    log(VERSION);
+                    log("Input JARs:      " + inputs.size());
+                    log("Output Dir:      " + (outputDir != null ? outputDir : "next to each input"));
+                    log("Mappings:        " + mapping.getVersion());
+                    log("Mappings Dir:    " + mapping.getSrgs());
+                    log("Engine:          " + remapOptions.getEngine().name().toLowerCase(Locale.ROOT));
+                    log("Threads:         " + remapOptions.getThreads());
+                    log("Jobs:            " + jobs);
+                    if (metricsWriter != null) {
+                        log("Metrics:         " + metricsWriter.getFile());
+                    }
+                    int failed = new BatchRemapper(mapping, remapOptions, jobs).setMetrics(metricsWriter).run(inputs, outputDir);
+                    System.exit(failed > 0 ? 1 : 0);
+                } catch(Exception e) {
+                    logErr(e.getMessage(), e);
+                    System.exit(1);
+                }
+            }
+
             IErrorHandler errorHandler = new CLIErrorHandler();
 
             log(VERSION);
@@ -216,9 +522,34 @@ public class BON2 {
             log("Output JAR:      " + outputJar);
             log("Mappings:        " + mapping.getVersion());
             log("Mappings Dir:    " + mapping.getSrgs());
+            log("Engine:          " + remapOptions.getEngine().name().toLowerCase(Locale.ROOT));
+            log("Threads:         " + remapOptions.getThreads());
+            if (remapOptions.getMaxMemory() > 0) {
+                log("Memory Limit:    " + remapOptions.getMaxMemory() / (1024 * 1024) + " MB");
+            }
+            if (remapOptions.getClassCacheDir() != null) {
+                log("Class Cache:     " + remapOptions.getClassCacheDir());
+            }
+            if (remapOptions.getJarCacheDir() != null) {
+                log("Jar Cache:       " + remapOptions.getJarCacheDir());
+            }
 
             try {
-                BON2Impl.remap(new File(inputJar), new File(outputJar), mapping, errorHandler, new CLIProgressListener());
+                if (STDIO.equals(inputJar) || STDIO.equals(outputJar)) {
+                    InputStream in = STDIO.equals(inputJar) ? new FileInputStream(FileDescriptor.in) : new FileInputStream(inputJar);
+                    OutputStream out = STDIO.equals(outputJar) ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(outputJar);
+                    BON2Impl.remap(new BufferedInputStream(in), new BufferedOutputStream(out), mapping, remapOptions, errorHandler, new CLIProgressListener());
+                } else {
+                    RemapMetrics metrics = new RemapMetrics();
+                    try {
+                        BON2Impl.remap(new File(inputJar), new File(outputJar), mapping, remapOptions, errorHandler, new CLIProgressListener(), metrics);
+                    } finally {
+                        if (metricsWriter != null) {
+                            metricsWriter.record(metrics);
+                            log("Metrics:         " + metrics);
+                        }
+                    }
+                }
             } catch(Exception e) {
                 logErr(e.getMessage(), e);
                 System.exit(1);
@@ -229,6 +560,12 @@ public class BON2 {
         }
     }
 
+    private static void printCacheStats(String name, File dir, CacheStats stats) {
+        log(name + ": " + dir);
+        log(String.format(Locale.ROOT, "  Entries:  %d (%.1f MB)", stats.getEntries(), stats.getSize() / (1024.0 * 1024.0)));
+        log(String.format(Locale.ROOT, "  Lookups:  %d hit(s), %d miss(es), %.1f%% hit rate", stats.getHits(), stats.getMisses(), stats.getHitRate() * 100));
+    }
+
     private static void log(String message) {
         System.out.println(message);
     }
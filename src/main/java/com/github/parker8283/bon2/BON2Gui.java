@@ -12,6 +12,7 @@ import javax.swing.border.EmptyBorder;
 
 import com.github.parker8283.bon2.data.GuiDownloadNew;
 import com.github.parker8283.bon2.data.MappingVersion;
+import com.github.parker8283.bon2.data.RemapOptions;
 import com.github.parker8283.bon2.data.VersionLookup;
 import com.github.parker8283.bon2.gui.BrowseListener;
 import com.github.parker8283.bon2.gui.JarDropTarget;
@@ -36,6 +37,7 @@ public class BON2Gui extends JFrame {
     public static final String PREFS_KEY_FORGEVER = "forgeVer";
     public static final String PREFS_KEY_OPEN_LOC = "openLoc";
     public static final String PREFS_KEY_SAVE_LOC = "closeLoc";
+    public static final String PREFS_KEY_THREADS = "threads";
 
     private static final long serialVersionUID = -619289399889088924L;
 
@@ -47,14 +49,15 @@ public class BON2Gui extends JFrame {
     private JTextField outputJarLoc;
     private JButton btnBrouseOutput;
     private JLabel lblForgeVer;
+    private JLabel lblThreads;
     private JLabel lblProgressText;
     private JProgressBar masterProgress;
 
     public BON2Gui() {
-        setMinimumSize(new Dimension(550, 210));
+        setMinimumSize(new Dimension(550, 240));
         setTitle("BON2");
         setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
-        setBounds(100, 100, 550, 210);
+        setBounds(100, 100, 550, 240);
         contentPane = new JPanel();
         contentPane.setBorder(new EmptyBorder(5, 5, 5, 5));
         setContentPane(contentPane);
@@ -136,12 +139,20 @@ public class BON2Gui extends JFrame {
             gui.setVisible(true);
         });
 
+        lblThreads = new JLabel("Threads");
+        lblThreads.setHorizontalAlignment(SwingConstants.CENTER);
+
+        int maxThreads = Math.max(RemapOptions.DEFAULT_THREADS, 64);
+        int savedThreads = Math.max(1, Math.min(prefs.getInt(PREFS_KEY_THREADS, RemapOptions.DEFAULT_THREADS), maxThreads));
+        JSpinner threads = new JSpinner(new SpinnerNumberModel(savedThreads, 1, maxThreads, 1));
+        threads.addChangeListener(e -> prefs.putInt(PREFS_KEY_THREADS, (Integer) threads.getValue()));
+
         masterProgress = new JProgressBar();
 
         lblProgressText = new JLabel("Ready!");
 
         JButton btnStart = new JButton("Go!");
-        btnStart.addMouseListener(new StartListener(this, inputJarLoc, outputJarLoc, forgeVersions, lblProgressText, masterProgress));
+        btnStart.addMouseListener(new StartListener(this, inputJarLoc, outputJarLoc, forgeVersions, threads, lblProgressText, masterProgress));
 
         lblProgressText.setHorizontalAlignment(SwingConstants.CENTER);
 
@@ -156,12 +167,14 @@ public class BON2Gui extends JFrame {
                         .addGroup(gl_contentPane.createSequentialGroup()
                             .addGroup(gl_contentPane.createParallelGroup(Alignment.LEADING, false)
                                 .addComponent(lblForgeVer, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                                .addComponent(lblThreads, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                                 .addComponent(lblInput, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                                 .addComponent(lblOutput, GroupLayout.DEFAULT_SIZE, 81, Short.MAX_VALUE))
                             .addPreferredGap(ComponentPlacement.RELATED)
                             .addGroup(gl_contentPane.createParallelGroup(Alignment.LEADING)
                                 .addComponent(inputJarLoc, Alignment.TRAILING, GroupLayout.DEFAULT_SIZE, 349, Short.MAX_VALUE)
                                 .addComponent(outputJarLoc, Alignment.TRAILING, GroupLayout.DEFAULT_SIZE, 349, Short.MAX_VALUE)
+                                .addComponent(threads, GroupLayout.PREFERRED_SIZE, 60, GroupLayout.PREFERRED_SIZE)
                                 .addGroup(Alignment.TRAILING, gl_contentPane.createSequentialGroup()
                                     .addComponent(forgeVersions, 0, 225, Short.MAX_VALUE)
                                     .addPreferredGap(ComponentPlacement.RELATED)
@@ -194,6 +207,10 @@ public class BON2Gui extends JFrame {
                         .addComponent(buttonDownload)
                         .addComponent(forgeVersions, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE))
                     .addPreferredGap(ComponentPlacement.RELATED)
+                    .addGroup(gl_contentPane.createParallelGroup(Alignment.BASELINE)
+                        .addComponent(lblThreads)
+                        .addComponent(threads, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE))
+                    .addPreferredGap(ComponentPlacement.RELATED)
                     .addComponent(btnStart)
                     .addPreferredGap(ComponentPlacement.RELATED)
                     .addComponent(masterProgress, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE)
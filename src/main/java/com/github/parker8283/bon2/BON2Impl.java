@@ -2,19 +2,38 @@ package com.github.parker8283.bon2;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import com.github.parker8283.bon2.data.IErrorHandler;
 import com.github.parker8283.bon2.data.IProgressListener;
 import com.github.parker8283.bon2.data.MappingVersion;
+import com.github.parker8283.bon2.data.RemapEngine;
+import com.github.parker8283.bon2.data.RemapOptions;
 import com.github.parker8283.bon2.srg.ClassCollection;
+import com.github.parker8283.bon2.srg.MappingTable;
 import com.github.parker8283.bon2.srg.Repo;
+import com.github.parker8283.bon2.util.ClassCache;
+import com.github.parker8283.bon2.util.ClassTransformer;
+import com.github.parker8283.bon2.util.JarCache;
+import com.github.parker8283.bon2.util.ConstantPoolRemapper;
+import com.github.parker8283.bon2.util.DirectoryRemapper;
 import com.github.parker8283.bon2.util.JarUtils;
+import com.github.parker8283.bon2.util.JfrEvents;
+import com.github.parker8283.bon2.util.RemapMetrics;
 import com.github.parker8283.bon2.util.Remapper;
+import com.github.parker8283.bon2.util.StreamingRemapper;
+import com.google.common.hash.HashCode;
 
 public class BON2Impl {
 
     /**
-     * Deobfuscates the inputJar to MCP names using the passed-in mappings.
+     * Deobfuscates the inputJar to MCP names using the passed-in mappings and the default {@link RemapOptions}.
      * @param inputJar Jar mapped to SRG names to be deobfuscated.
      * @param outputJar The file that will be the remapped jar.
      * @param mappings The mappings to use. In form "minecraftVer-forgeVer-mappingVer".
@@ -22,15 +41,191 @@ public class BON2Impl {
      * @param progressListener An IProgressListener impl to handle listening to the progress of the remapping.
      */
     public static void remap(File inputJar, File outputJar, MappingVersion mappings, IErrorHandler errorHandler, IProgressListener progressListener) throws IOException {
-        File srgsFolder = mappings.getSrgs();
-        Repo.loadMappings(srgsFolder, progressListener);
-        ClassCollection inputCC = JarUtils.readFromJar(inputJar, errorHandler, progressListener);
-        ClassCollection outputCC = Remapper.remap(inputCC, progressListener);
-        JarUtils.writeToJar(outputCC, outputJar, progressListener);
+        remap(inputJar, outputJar, mappings, new RemapOptions(), errorHandler, progressListener);
+    }
+
+    /**
+     * Deobfuscates the inputJar to MCP names using the passed-in mappings.
+     * @param inputJar Jar mapped to SRG names to be deobfuscated, or a directory with the contents of one.
+     * @param outputJar The file that will be the remapped jar, or the directory it is written to if the input is one.
+     * @param mappings The mappings to use. In form "minecraftVer-forgeVer-mappingVer".
+     * @param options Selects the remap engine and related settings.
+     * @param errorHandler An IErrorHandler impl to handle when an error is encountered in the remapping process.
+     * @param progressListener An IProgressListener impl to handle listening to the progress of the remapping.
+     */
+    public static void remap(File inputJar, File outputJar, MappingVersion mappings, RemapOptions options, IErrorHandler errorHandler, IProgressListener progressListener) throws IOException {
+        remap(inputJar, outputJar, mappings, options, errorHandler, progressListener, new RemapMetrics());
+    }
+
+    /**
+     * Same as {@link #remap(File, File, MappingVersion, RemapOptions, IErrorHandler, IProgressListener)}, recording what
+     * each phase cost in {@code metrics}, and emits a {@link JfrEvents} jar event while a flight recording runs.
+     */
+    public static void remap(File inputJar, File outputJar, MappingVersion mappings, RemapOptions options, IErrorHandler errorHandler, IProgressListener progressListener, RemapMetrics metrics) throws IOException {
+        JfrEvents.Span jarEvent = JfrEvents.beginJar();
+        try {
+            remapFile(inputJar, outputJar, mappings, options, errorHandler, progressListener, metrics);
+        } finally {
+            if(!metrics.isFinished()) {
+                metrics.fail();
+            }
+            jarEvent.commit(inputJar.getPath(), outputJar.getPath(), metrics.getEngine(), metrics.getStatus().name(), metrics.getClasses(), metrics.getResources(),
+                    metrics.getBytesIn(), metrics.getBytesOut(), metrics.getMappingHits(), metrics.getMappingMisses());
+        }
+    }
+
+    private static void remapFile(File inputJar, File outputJar, MappingVersion mappings, RemapOptions options, IErrorHandler errorHandler, IProgressListener progressListener, RemapMetrics metrics) throws IOException {
+        metrics.setInput(inputJar.getPath()).setOutput(outputJar.getPath()).setEngine(options.getEngine().name().toLowerCase(Locale.ROOT).replace('_', '-'));
+        MappingTable table;
+        RemapMetrics.Span loadSpan = metrics.begin(RemapMetrics.Phase.LOAD_MAPPINGS);
+        try {
+            table = metrics.countLookups(Repo.getMappings(mappings, progressListener));
+        } finally {
+            loadSpan.end();
+        }
+        ClassCache cache = options.getClassCacheDir() != null ? new ClassCache(options.getClassCacheDir(), options.getClassCacheSize(), table, options.getEngine()) : null;
+        AtomicInteger problems = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        IErrorHandler countingHandler = (message, warning) -> {
+            problems.incrementAndGet();
+            if(!warning) {
+                errors.incrementAndGet();
+            }
+            return errorHandler.handleError(message, warning);
+        };
+        if(inputJar.isDirectory()) {
+            RemapMetrics.Span span = metrics.begin(RemapMetrics.Phase.STREAM);
+            try {
+                DirectoryRemapper.remap(inputJar, outputJar, table, getTransformer(options.getEngine(), cache), options.getThreads(), options.getCompressionLevel(), countingHandler, progressListener);
+            } finally {
+                span.end();
+            }
+            finish(cache, progressListener);
+            finish(metrics, inputJar, outputJar, getStatus(problems.get(), errors.get()), problems.get());
+            return;
+        }
+        JarCache jarCache = options.getJarCacheDir() != null ? new JarCache(options.getJarCacheDir(), options.getJarCacheSize()) : null;
+        HashCode jarKey = null;
+        if(jarCache != null) {
+            progressListener.startWithoutProgress("Looking up output in jar cache");
+            jarKey = jarCache.getKey(inputJar, table, options);
+            if(jarCache.fetch(jarKey, outputJar)) {
+                progressListener.start(1, "Done! (output reused from jar cache)");
+                progressListener.setProgress(1);
+                finish(metrics, inputJar, outputJar, RemapMetrics.Status.CACHED, 0);
+                return;
+            }
+        }
+        switch(options.getMaxMemory() > 0 ? RemapEngine.STREAMING : options.getEngine()) {
+            case CONSTANT_POOL:
+            case STREAMING:
+                // with a memory limit the tree engine remaps class by class too, a ClassCollection holds the whole jar
+                RemapMetrics.Span streamSpan = metrics.begin(RemapMetrics.Phase.STREAM);
+                try {
+                    StreamingRemapper.remap(inputJar, outputJar, table, getTransformer(options.getEngine(), cache), options.getThreads(), options.getCompressionLevel(), options.getMaxMemory(), countingHandler, progressListener);
+                } finally {
+                    streamSpan.end();
+                }
+                break;
+            case TREE:
+            default:
+                ClassCollection read;
+                RemapMetrics.Span readSpan = metrics.begin(RemapMetrics.Phase.READ);
+                try {
+                    read = JarUtils.readFromJar(inputJar, options.getThreads(), table, cache, options.getCompressionLevel(), countingHandler, progressListener);
+                } finally {
+                    readSpan.end();
+                }
+                try(ClassCollection inputCC = read) {
+                    ClassCollection outputCC;
+                    RemapMetrics.Span remapSpan = metrics.begin(RemapMetrics.Phase.REMAP);
+                    try {
+                        outputCC = Remapper.remap(inputCC, table, options.getThreads(), progressListener);
+                    } finally {
+                        remapSpan.end();
+                    }
+                    RemapMetrics.Span writeSpan = metrics.begin(RemapMetrics.Phase.WRITE);
+                    try {
+                        JarUtils.writeToJar(outputCC, outputJar, options.getThreads(), options.getCompressionLevel(), cache, progressListener);
+                    } finally {
+                        writeSpan.end();
+                    }
+                }
+                break;
+        }
+        if(jarCache != null && problems.get() == 0) {
+            jarCache.store(jarKey, outputJar); // only clean results, a hit would swallow the warnings
+        }
+        finish(cache, progressListener);
+        finish(metrics, inputJar, outputJar, getStatus(problems.get(), errors.get()), problems.get());
+    }
+
+    /**
+     * Deobfuscates a jar read from {@code input} and writes the result to {@code output}, without either being a file.
+     * Every engine remaps entry by entry here, see
+     * {@link StreamingRemapper#remap(InputStream, OutputStream, MappingTable, ClassTransformer, int, int, long, IErrorHandler, IProgressListener)}.
+     * The jar cache is not used, its key is a hash of the whole input; the class cache is.
+     * @param input The jar, e.g. stdin. Is closed when done.
+     * @param output Receives the remapped jar, e.g. stdout. Is closed when done.
+     */
+    public static void remap(InputStream input, OutputStream output, MappingVersion mappings, RemapOptions options, IErrorHandler errorHandler, IProgressListener progressListener) throws IOException {
+        MappingTable table = Repo.getMappings(mappings, progressListener);
+        ClassCache cache = options.getClassCacheDir() != null ? new ClassCache(options.getClassCacheDir(), options.getClassCacheSize(), table, options.getEngine()) : null;
+        StreamingRemapper.remap(input, output, table, getTransformer(options.getEngine(), cache), options.getThreads(), options.getCompressionLevel(), options.getMaxMemory(), errorHandler, progressListener);
+        finish(cache, progressListener);
+    }
+
+    /**
+     * @return How {@code engine} remaps a single class file, looking it up in {@code cache} first if there is one.
+     */
+    private static ClassTransformer getTransformer(RemapEngine engine, ClassCache cache) {
+        ClassTransformer transformer;
+        switch(engine) {
+            case CONSTANT_POOL:
+                transformer = ConstantPoolRemapper::remapClass;
+                break;
+            case STREAMING:
+                transformer = StreamingRemapper::remapClass;
+                break;
+            case TREE:
+            default:
+                transformer = Remapper::remapClass;
+                break;
+        }
+        return JfrEvents.wrap("transform", cache != null ? cache.wrap(transformer) : transformer);
+    }
+
+    private static void finish(ClassCache cache, IProgressListener progressListener) {
+        if(cache != null) {
+            cache.finish();
+            progressListener.startWithoutProgress("Class cache: " + cache.getHits() + " hit(s), " + cache.getMisses() + " miss(es)");
+        }
         progressListener.start(1, "Done!");
         progressListener.setProgress(1);
     }
 
+    private static RemapMetrics.Status getStatus(int problems, int errors) {
+        return errors > 0 ? RemapMetrics.Status.FAILED : problems > 0 ? RemapMetrics.Status.WARNINGS : RemapMetrics.Status.OK;
+    }
+
+    private static void finish(RemapMetrics metrics, File inputJar, File outputJar, RemapMetrics.Status status, int problems) throws IOException {
+        metrics.countEntries(inputJar);
+        metrics.setBytes(size(inputJar), size(outputJar));
+        metrics.finish(status, problems);
+    }
+
+    /**
+     * @return The length of a file, or the total length of the files below a directory.
+     */
+    private static long size(File file) throws IOException {
+        if(!file.isDirectory()) {
+            return file.length();
+        }
+        try(Stream<Path> paths = Files.walk(file.toPath())) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
     /**
      * Utility to help build a valid mapping version to pass into the remap process.
      * @param mcVer The Minecraft Version to use.
@@ -0,0 +1,311 @@
+package com.github.parker8283.bon2.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.github.parker8283.bon2.BON2Impl;
+import com.github.parker8283.bon2.data.IErrorHandler;
+import com.github.parker8283.bon2.data.IProgressListener;
+import com.github.parker8283.bon2.data.MappingVersion;
+import com.github.parker8283.bon2.data.RemapEngine;
+import com.github.parker8283.bon2.data.RemapOptions;
+import com.github.parker8283.bon2.srg.Repo;
+import com.github.parker8283.bon2.util.BONUtils;
+import com.github.parker8283.bon2.util.ConcurrencyUtils;
+import com.github.parker8283.bon2.util.RemapMetrics;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Remaps many jars in one JVM, loading the mappings only once.<br/>
+ * Up to {@code jobs} jars are remapped at the same time, sharing the worker threads of the {@link RemapOptions} between
+ * them. A jar only starts once its estimated heap use fits in what's left of the heap, so a few huge jars can't run the
+ * JVM out of memory. A line is printed for every jar as it finishes, and a summary at the end.
+ */
+public class BatchRemapper {
+    private static final long MB = 1024 * 1024;
+
+    private final MappingVersion mappings;
+    private final RemapOptions options;
+    private final int jobs;
+    private MetricsWriter metrics;
+
+    /**
+     * @param jobs How many jars may be remapped concurrently.
+     */
+    public BatchRemapper(MappingVersion mappings, RemapOptions options, int jobs) {
+        this.mappings = mappings;
+        this.options = options;
+        this.jobs = jobs;
+    }
+
+    /**
+     * @param metrics Gets the metrics of every jar remapped, or null.
+     */
+    public BatchRemapper setMetrics(MetricsWriter metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Gathers the jars to remap, without duplicates and in the order given.
+     * @param jars Jar paths or glob patterns such as {@code mods/*.jar}.
+     * @param inputDir A directory whose jars are all remapped, or null.
+     * @param inputList A text file listing one jar per line, or null. Blank lines and lines starting with # are ignored.
+     */
+    public static List<File> collectInputs(List<String> jars, File inputDir, File inputList) throws IOException {
+        Set<File> inputs = Sets.newLinkedHashSet();
+        for(String jar : jars) {
+            if(isGlob(jar)) {
+                inputs.addAll(expandGlob(jar));
+            } else {
+                inputs.add(new File(jar));
+            }
+        }
+        if(inputDir != null) {
+            if(!inputDir.isDirectory()) {
+                throw new IOException("Not a directory: " + inputDir);
+            }
+            File[] files = inputDir.listFiles((dir, name) -> name.endsWith(".jar"));
+            if(files != null) {
+                Arrays.sort(files);
+                Collections.addAll(inputs, files);
+            }
+        }
+        if(inputList != null) {
+            for(String line : Files.readAllLines(inputList.toPath(), StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if(!line.isEmpty() && !line.startsWith("#")) {
+                    inputs.add(new File(line));
+                }
+            }
+        }
+        return Lists.newArrayList(inputs);
+    }
+
+    /**
+     * @return Whether {@code path} contains {@code *} or {@code ?} and has to be expanded by {@link #collectInputs}. An
+     * existing file is always taken literally, and brackets and braces are never wildcards, since jar names such as
+     * {@code [1.12.2]Mod.jar} are common.
+     */
+    public static boolean isGlob(String path) {
+        return (path.indexOf('*') >= 0 || path.indexOf('?') >= 0) && !new File(path).exists();
+    }
+
+    /**
+     * Walks the directory in front of the first wildcard and matches the rest of the pattern against the paths below it.
+     */
+    private static List<File> expandGlob(String pattern) throws IOException {
+        String normalized = pattern.replace('\\', '/');
+        int wildcard = normalized.length();
+        for(char c : new char[] {'*', '?'}) {
+            int index = normalized.indexOf(c);
+            if(index >= 0) {
+                wildcard = Math.min(wildcard, index);
+            }
+        }
+        int slash = normalized.lastIndexOf('/', wildcard);
+        Path base = Paths.get(slash >= 0 ? normalized.substring(0, slash + 1) : ".");
+        String glob = normalized.substring(slash + 1).replaceAll("([\\[\\]{}])", "\\\\$1"); // only * and ? are wildcards
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        if(!Files.isDirectory(base)) {
+            return Collections.emptyList();
+        }
+        try(Stream<Path> paths = Files.walk(base)) {
+            return paths.filter(path -> Files.isRegularFile(path) && matcher.matches(base.relativize(path)))
+                        .sorted()
+                        .map(Path::toFile)
+                        .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * @param outputDir Where the remapped jars go, keeping their names. If null, each goes next to its input with
+     *                  "-deobf" appended, like a single remap does.
+     * @return The number of jars that failed.
+     */
+    public int run(List<File> inputs, File outputDir) throws IOException {
+        if(outputDir != null && !outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Could not create output directory " + outputDir);
+        }
+        long start = System.nanoTime();
+        Repo.getMappings(mappings, new CLIProgressListener()); // load once, every job reuses the table
+
+        int jobCount = Math.max(1, Math.min(jobs, inputs.size()));
+        RemapOptions jobOptions = options.copy().setThreads(Math.max(1, options.getThreads() / jobCount));
+        Runtime runtime = Runtime.getRuntime();
+        int memoryBudget = (int)Math.max(64, (runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory())) * 3 / 4 / MB);
+        Semaphore memory = new Semaphore(memoryBudget, true);
+        System.out.println("Remapping " + inputs.size() + " jars, " + jobCount + " at a time with " + jobOptions.getThreads() + " thread(s) each");
+
+        Map<File, File> claimedOutputs = Maps.newHashMap();
+        List<Future<JarResult>> results = Lists.newArrayList();
+        ExecutorService pool = ConcurrencyUtils.newWorkerPool(jobCount, "BON2 Batch");
+        try {
+            for(File input : inputs) {
+                File output = outputDir != null ? new File(outputDir, input.getName()) : BONUtils.getDefaultOutput(input);
+                File previous = claimedOutputs.put(output.getCanonicalFile(), input);
+                if(previous != null) {
+                    results.add(CompletableFuture.completedFuture(JarResult.failed(input, output, "Output collides with the output of " + previous)));
+                    continue;
+                }
+                if(output.getCanonicalFile().equals(input.getCanonicalFile())) {
+                    results.add(CompletableFuture.completedFuture(JarResult.failed(input, output, "Output would overwrite the input")));
+                    continue;
+                }
+                int needed = (int)Math.min(memoryBudget, estimateMemory(input, jobOptions.getEngine()) / MB);
+                results.add(pool.submit(() -> {
+                    memory.acquireUninterruptibly(needed);
+                    try {
+                        JarResult result = remap(input, output, jobOptions);
+                        print(result);
+                        return result;
+                    } finally {
+                        memory.release(needed);
+                    }
+                }));
+            }
+            List<JarResult> failed = Lists.newArrayList();
+            for(Future<JarResult> future : results) {
+                JarResult result = ConcurrencyUtils.await(future);
+                if(result.timeMillis < 0) {
+                    print(result); // rejected before it was submitted
+                }
+                if(result.failure != null) {
+                    failed.add(result);
+                }
+            }
+            System.out.println();
+            System.out.println(String.format(Locale.ROOT, "Remapped %d of %d jars in %.1f s", inputs.size() - failed.size(), inputs.size(), (System.nanoTime() - start) / 1e9));
+            for(JarResult result : failed) {
+                System.out.println("  FAILED " + result.input + ": " + result.failure);
+            }
+            return failed.size();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private JarResult remap(File input, File output, RemapOptions jobOptions) {
+        long start = System.nanoTime();
+        CollectingErrorHandler errors = new CollectingErrorHandler();
+        String failure = null;
+        try {
+            if(!input.isFile()) {
+                failure = "File does not exist";
+            } else {
+                RemapMetrics runMetrics = new RemapMetrics();
+                try {
+                    BON2Impl.remap(input, output, mappings, jobOptions, errors, new SilentProgressListener(), runMetrics);
+                } finally {
+                    if(metrics != null) {
+                        metrics.record(runMetrics);
+                    }
+                }
+                if(errors.errors > 0) {
+                    failure = errors.errors + " class(es) could not be remapped, first: " + errors.firstError.replace('\n', ' ');
+                }
+            }
+        } catch(Exception e) {
+            failure = e.toString();
+        }
+        return new JarResult(input, output, (System.nanoTime() - start) / 1000000, errors.warnings, failure);
+    }
+
+    /**
+     * Rough peak heap use of remapping {@code jar}: the tree engine holds every class as a ClassNode at once, the other
+     * engines only a small window of entries.
+     */
+    static long estimateMemory(File jar, RemapEngine engine) {
+        long size = jar.length();
+        return engine == RemapEngine.TREE ? 16 * MB + size * 10 : 16 * MB + Math.min(size, 32 * MB);
+    }
+
+    private static synchronized void print(JarResult result) {
+        String status = result.failure != null ? "FAILED" : "OK    ";
+        String time = result.timeMillis >= 0 ? String.format(Locale.ROOT, "%6d ms", result.timeMillis) : "        -";
+        String warnings = result.warnings > 0 ? " (" + result.warnings + " warning(s))" : "";
+        System.out.println(status + " " + time + "  " + result.input + " -> " + result.output + warnings);
+    }
+
+    private static class JarResult {
+        final File input;
+        final File output;
+        final long timeMillis;
+        final int warnings;
+        final String failure;
+
+        JarResult(File input, File output, long timeMillis, int warnings, String failure) {
+            this.input = input;
+            this.output = output;
+            this.timeMillis = timeMillis;
+            this.warnings = warnings;
+            this.failure = failure;
+        }
+
+        static JarResult failed(File input, File output, String failure) {
+            return new JarResult(input, output, -1, 0, failure);
+        }
+    }
+
+    /**
+     * Counts problems instead of printing them, so concurrent jars don't interleave their output.
+     */
+    static class CollectingErrorHandler implements IErrorHandler {
+        int errors;
+        int warnings;
+        String firstError;
+
+        @Override
+        public synchronized boolean handleError(String message, boolean warning) {
+            if(warning) {
+                warnings++;
+            } else if(errors++ == 0) {
+                firstError = message;
+            }
+            return true;
+        }
+    }
+
+    static class SilentProgressListener implements IProgressListener {
+
+        @Override
+        public void start(int max, String label) {
+        }
+
+        @Override
+        public void startWithoutProgress(String label) {
+        }
+
+        @Override
+        public void setProgress(int value) {
+        }
+
+        @Override
+        public void setMax(int max) {
+        }
+
+        @Override
+        public void setLabel(String label) {
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.parker8283.bon2.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Locale;
+
+import com.github.parker8283.bon2.util.MetricsRegistry;
+import com.github.parker8283.bon2.util.RemapMetrics;
+
+/**
+ * Writes the {@link RemapMetrics} of every remap in this process to the file given with {@code --metrics-out}.<br/>
+ * {@link Format#JSON} appends one JSON object per remap on its own line, so a single remap leaves a plain JSON file.
+ * {@link Format#PROMETHEUS} rewrites the file with the totals so far after each remap, for the textfile collector of
+ * the node exporter. The file is emptied when the writer is created.
+ */
+public class MetricsWriter {
+    public enum Format {
+        JSON, PROMETHEUS;
+
+        public static Format getByName(String name) {
+            for(Format format : values()) {
+                if(format.name().equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final File file;
+    private final Format format;
+    private final MetricsRegistry registry;
+
+    /**
+     * @param registry Where the remaps are totalled, shared with whatever else exposes them.
+     */
+    public MetricsWriter(File file, Format format, MetricsRegistry registry) throws IOException {
+        this.file = file;
+        this.format = format;
+        this.registry = registry;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        Files.write(file.toPath(), new byte[0]);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Adds a remap to the registry and the file. Failing to write the file only loses metrics, so it is reported but not
+     * thrown.
+     */
+    public synchronized void record(RemapMetrics run) {
+        registry.record(run);
+        try {
+            if(format == Format.JSON) {
+                Files.write(file.toPath(), Collections.singletonList(run.toJson()), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+                return;
+            }
+            File temp = new File(file.getPath() + ".tmp");
+            Files.write(temp.toPath(), registry.toPrometheus().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch(AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch(IOException e) {
+            System.err.println(String.format(Locale.ROOT, "Could not write metrics to %s: %s", file, e));
+        }
+    }
+}
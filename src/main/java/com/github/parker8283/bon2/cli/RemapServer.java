@@ -0,0 +1,471 @@
+package com.github.parker8283.bon2.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.parker8283.bon2.BON2;
+import com.github.parker8283.bon2.BON2Impl;
+import com.github.parker8283.bon2.data.BONFiles;
+import com.github.parker8283.bon2.data.MappingManager;
+import com.github.parker8283.bon2.data.MappingVersion;
+import com.github.parker8283.bon2.data.RemapEngine;
+import com.github.parker8283.bon2.data.RemapOptions;
+import com.github.parker8283.bon2.io.ZipArchiveWriter;
+import com.github.parker8283.bon2.srg.Repo;
+import com.github.parker8283.bon2.util.BONUtils;
+import com.github.parker8283.bon2.util.ConcurrencyUtils;
+import com.github.parker8283.bon2.util.MetricsRegistry;
+import com.github.parker8283.bon2.util.RemapMetrics;
+import com.google.common.collect.Maps;
+import com.google.common.io.BaseEncoding;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Keeps BON2 running and remaps jars on request, so callers don't pay for JVM startup, class loading, JIT warmup and
+ * reading the mappings on every jar.<br/>
+ * Listens on the loopback interface only. Endpoints:
+ * <ul>
+ * <li>{@code POST /remap?input=<path>[&output=<path>]} remaps a jar, or a directory of classes, on disk and answers
+ * with a JSON result.</li>
+ * <li>{@code POST /remap} with the jar as the request body answers with the remapped jar, or writes it to
+ * {@code output} if given.</li>
+ * <li>{@code GET /status} reports uptime, job counts and the jobs in progress.</li>
+ * <li>{@code GET /metrics} exposes the totals of every remap so far for Prometheus, see {@link MetricsRegistry}.</li>
+ * <li>{@code POST /shutdown} stops the server once the running jobs are done.</li>
+ * </ul>
+ * {@code /remap} also takes {@code mappingsVer} or {@code mappingsDir} (defaulting to the ones the server was started
+ * with), {@code engine}, {@code threads}, {@code compression} and {@code noCache=true}, with the same meaning as on the
+ * command line. Up to {@code jobs} remaps run at once; the rest wait for a free slot. The other endpoints don't count
+ * against that limit, so status probes, scrapes and shutdowns are answered while every slot is busy.
+ * <p>
+ * The server reads and writes any path its user can, so every request must carry {@code Authorization: Bearer <token>}.
+ * The token is given with {@code --token}, or generated at startup and written to a file only its owner can read, by
+ * default {@code ~/.bon2/server-<port>.token}, so other users and their processes can't use the server. Any web page
+ * could also make the browser post to the server, so requests that carry an {@code Origin} header or name a
+ * {@code Host} other than the loopback interface (DNS rebinding) are refused as well. An {@code output} is only replaced
+ * once its remap has succeeded; until then the result goes to a temporary file next to it.
+ */
+public class RemapServer {
+    public static final int DEFAULT_PORT = 8765;
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private final MappingVersion defaultMappings;
+    private final RemapOptions options;
+    private final int jobs;
+    private final MappingManager mappingManager;
+    private final ConcurrentMap<String, MappingVersion> resolvedMappings = Maps.newConcurrentMap();
+
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final Semaphore remapSlots;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private MetricsRegistry metricsRegistry = new MetricsRegistry();
+    private MetricsWriter metrics;
+    private String token;
+    private File tokenFile;
+    private long startTime;
+
+    /**
+     * @param defaultMappings The mappings used when a request doesn't name any, or null to require them on every request.
+     * @param options The engine, compression and total thread count. Each job gets an equal share of the threads.
+     * @param jobs How many requests are remapped concurrently.
+     */
+    public RemapServer(MappingVersion defaultMappings, RemapOptions options, int jobs, MappingManager mappingManager) {
+        this.defaultMappings = defaultMappings;
+        this.options = options;
+        this.jobs = jobs;
+        this.mappingManager = mappingManager;
+        this.remapSlots = new Semaphore(jobs, true);
+    }
+
+    /**
+     * @param metrics Also writes the metrics of every remap to a file, or null. {@code /metrics} then serves its registry.
+     */
+    public RemapServer setMetrics(MetricsWriter metrics) {
+        this.metrics = metrics;
+        if(metrics != null) {
+            metricsRegistry = metrics.getRegistry();
+        }
+        return this;
+    }
+
+    /**
+     * @param token The token every request must carry, or null to generate one at startup.
+     */
+    public RemapServer setToken(String token) {
+        this.token = token;
+        return this;
+    }
+
+    /**
+     * @param tokenFile Where a generated token is written, or null for {@code ~/.bon2/server-<port>.token}.
+     */
+    public RemapServer setTokenFile(File tokenFile) {
+        this.tokenFile = tokenFile;
+        return this;
+    }
+
+    /**
+     * Serves requests on {@code port} until {@code /shutdown} is called.
+     */
+    public void run(int port) throws IOException, InterruptedException {
+        File writtenToken = null;
+        if(token == null) {
+            byte[] random = new byte[32];
+            new SecureRandom().nextBytes(random);
+            token = BaseEncoding.base16().lowerCase().encode(random);
+            writtenToken = tokenFile != null ? tokenFile : new File(BONFiles.BON_HOME_FOLDER, "server-" + port + ".token");
+            writeOwnerOnly(writtenToken, token);
+        }
+        if(defaultMappings != null) {
+            Repo.getMappings(defaultMappings, new CLIProgressListener()); // the first request shouldn't have to wait for them
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        ExecutorService pool = ConcurrencyUtils.newCachedPool("BON2 Server");
+        server.setExecutor(pool);
+        server.createContext("/remap", handler(this::handleRemap));
+        server.createContext("/status", handler(this::handleStatus));
+        server.createContext("/metrics", handler(this::handleMetrics));
+        server.createContext("/shutdown", handler(this::handleShutdown));
+        startTime = System.nanoTime();
+        server.start();
+        System.out.println("Listening on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/ with " + jobs + " job(s)");
+        if(writtenToken != null) {
+            System.out.println("Token written to " + writtenToken);
+        }
+        try {
+            stopped.await();
+        } finally {
+            server.stop(0);
+            pool.shutdown();
+            if(writtenToken != null) {
+                writtenToken.delete();
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "Stopped after %d remapped and %d failed jar(s)", succeeded.get(), failed.get()));
+    }
+
+    private void handleRemap(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "POST");
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        MappingVersion mappings = getMappings(params);
+        RemapOptions jobOptions = getOptions(params);
+
+        boolean upload = !params.containsKey("input");
+        File input = upload ? File.createTempFile("bon2-upload", ".jar") : new File(params.get("input"));
+        File output = params.containsKey("output") ? new File(params.get("output"))
+                : upload ? File.createTempFile("bon2-remapped", ".jar") : BONUtils.getDefaultOutput(input);
+        boolean tempOutput = upload && !params.containsKey("output");
+        // a failed remap must not cost the caller an existing output, so it goes next to it until it is done
+        File result = tempOutput || input.isDirectory() ? output : File.createTempFile(".bon2-", ".jar", output.getAbsoluteFile().getParentFile());
+        try {
+            if(upload) {
+                try(InputStream in = exchange.getRequestBody()) {
+                    Files.copy(in, input.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } else if(!input.exists()) {
+                throw new IllegalArgumentException("Input does not exist: " + input);
+            } else if(output.getCanonicalFile().equals(input.getCanonicalFile())) {
+                throw new IllegalArgumentException("Output would overwrite the input: " + output);
+            }
+
+            waiting.incrementAndGet();
+            try {
+                remapSlots.acquireUninterruptibly();
+            } finally {
+                waiting.decrementAndGet();
+            }
+            active.incrementAndGet();
+            long start = System.nanoTime();
+            BatchRemapper.CollectingErrorHandler errors = new BatchRemapper.CollectingErrorHandler();
+            RemapMetrics runMetrics = new RemapMetrics();
+            boolean ok = false;
+            try {
+                BON2Impl.remap(input, result, mappings, jobOptions, errors, new BatchRemapper.SilentProgressListener(), runMetrics);
+                ok = errors.errors == 0;
+                if(ok && result != output) {
+                    replace(result, output);
+                }
+            } finally {
+                active.decrementAndGet();
+                remapSlots.release();
+                (ok ? succeeded : failed).incrementAndGet();
+                runMetrics.setInput(upload ? null : input.getPath()).setOutput(tempOutput ? null : output.getPath());
+                if(metrics != null) {
+                    metrics.record(runMetrics);
+                } else {
+                    metricsRegistry.record(runMetrics);
+                }
+            }
+            long timeMillis = (System.nanoTime() - start) / 1000000;
+
+            if(tempOutput && errors.errors == 0) {
+                exchange.getResponseHeaders().set("Content-Type", "application/java-archive");
+                exchange.getResponseHeaders().set("X-BON2-Time-Millis", Long.toString(timeMillis));
+                exchange.getResponseHeaders().set("X-BON2-Warnings", Integer.toString(errors.warnings));
+                exchange.sendResponseHeaders(200, output.length());
+                try(OutputStream out = exchange.getResponseBody()) {
+                    Files.copy(output.toPath(), out);
+                }
+                return;
+            }
+            Map<String, Object> response = Maps.newLinkedHashMap();
+            response.put("status", errors.errors > 0 ? "FAILED" : "OK");
+            response.put("input", upload ? null : input.getPath());
+            response.put("output", tempOutput ? null : output.getPath());
+            response.put("mappings", mappings.getVersion());
+            response.put("timeMillis", timeMillis);
+            response.put("warnings", errors.warnings);
+            response.put("errors", errors.errors);
+            if(errors.firstError != null) {
+                response.put("firstError", errors.firstError);
+            }
+            sendJson(exchange, errors.errors > 0 ? 422 : 200, response);
+        } finally {
+            if(upload) {
+                input.delete();
+            }
+            if(tempOutput) {
+                output.delete();
+            }
+            if(result != output) {
+                result.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes {@code text} to a new file that only the current user can read and write.
+     */
+    private static void writeOwnerOnly(File file, String text) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create directory " + parent);
+        }
+        Files.deleteIfExists(file.toPath());
+        if(FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(file.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(file.toPath());
+            file.setReadable(false, false);
+            file.setWritable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(true, true);
+        }
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void replace(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        Map<String, Object> status = Maps.newLinkedHashMap();
+        status.put("version", BON2.VERSION);
+        status.put("uptimeSeconds", (System.nanoTime() - startTime) / 1000000000L);
+        status.put("defaultMappings", defaultMappings != null ? defaultMappings.getVersion() : null);
+        status.put("engine", options.getEngine().name().toLowerCase(Locale.ROOT));
+        status.put("jobs", jobs);
+        status.put("active", active.get());
+        status.put("waiting", waiting.get());
+        status.put("succeeded", succeeded.get());
+        status.put("failed", failed.get());
+        sendJson(exchange, 200, status);
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "GET");
+        byte[] bytes = metricsRegistry.toPrometheus().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", MetricsRegistry.CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void handleShutdown(HttpExchange exchange) throws IOException {
+        requireMethod(exchange, "POST");
+        Map<String, Object> result = Maps.newLinkedHashMap();
+        result.put("status", "STOPPING");
+        sendJson(exchange, 200, result);
+        stopped.countDown();
+    }
+
+    /**
+     * @return The mappings a request asks for. Versions are looked up once and then remembered, like the tables they load.
+     */
+    private MappingVersion getMappings(Map<String, String> params) throws IOException {
+        if(params.containsKey("mappingsDir")) {
+            File dir = new File(params.get("mappingsDir"));
+            if(!new File(dir, Repo.FIELDS_CSV).isFile()) {
+                throw new IllegalArgumentException("Custom mappings directory is invalid or missing files: " + dir);
+            }
+            return new MappingVersion("custom", dir);
+        }
+        String version = params.get("mappingsVer");
+        if(version == null) {
+            if(defaultMappings == null) {
+                throw new IllegalArgumentException("mappingsVer or mappingsDir is required, the server was started without default mappings");
+            }
+            return defaultMappings;
+        }
+        MappingVersion mappings = resolvedMappings.get(version);
+        if(mappings == null) {
+            synchronized(mappingManager) {
+                mappings = BONUtils.findMappings(version, mappingManager);
+            }
+            if(mappings == null) {
+                throw new IllegalArgumentException("Unknown mappingsVer: " + version);
+            }
+            resolvedMappings.put(version, mappings);
+        }
+        return mappings;
+    }
+
+    private RemapOptions getOptions(Map<String, String> params) {
+        RemapOptions jobOptions = options.copy().setThreads(Math.max(1, options.getThreads() / jobs));
+        if(params.containsKey("engine")) {
+            RemapEngine engine = RemapEngine.getByName(params.get("engine"));
+            if(engine == null) {
+                throw new IllegalArgumentException("Unknown engine: " + params.get("engine"));
+            }
+            jobOptions.setEngine(engine);
+        }
+        if(params.containsKey("threads")) {
+            jobOptions.setThreads(parseInt(params, "threads"));
+        }
+        if(Boolean.parseBoolean(params.get("noCache"))) {
+            jobOptions.disableCaches();
+        }
+        if(params.containsKey("compression")) {
+            String compression = params.get("compression");
+            jobOptions.setCompressionLevel("stored".equalsIgnoreCase(compression) ? ZipArchiveWriter.STORED : parseInt(params, "compression"));
+        }
+        return jobOptions;
+    }
+
+    private static int parseInt(Map<String, String> params, String name) {
+        try {
+            return Integer.parseInt(params.get(name));
+        } catch(NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + params.get(name));
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> params = Maps.newHashMap();
+        if(query != null) {
+            for(String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if(equals > 0) {
+                    params.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+                }
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Refuses requests without the token, and requests a browser sends on behalf of a web page: cross-origin requests
+     * carry an {@code Origin} header, and a page on a rebound domain names that domain as the {@code Host}.
+     */
+    private void requireLocalCaller(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        byte[] expected = ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+        if(authorization == null || !MessageDigest.isEqual(expected, authorization.getBytes(StandardCharsets.UTF_8))) {
+            throw new SecurityException("Missing or wrong token, send Authorization: Bearer <token>");
+        }
+        if(exchange.getRequestHeaders().containsKey("Origin")) {
+            throw new SecurityException("Requests from web pages are not accepted");
+        }
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        if(host == null || !isLoopbackHost(host)) {
+            throw new SecurityException("Host must be a loopback address, was " + host);
+        }
+    }
+
+    private static boolean isLoopbackHost(String host) {
+        String name = host.startsWith("[") ? host.substring(1, Math.max(1, host.indexOf(']'))) : host.replaceFirst(":\\d*$", "");
+        name = name.toLowerCase(Locale.ROOT);
+        return name.equals("localhost") || name.equals("::1") || name.matches("127(\\.\\d{1,3}){3}");
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if(!method.equals(exchange.getRequestMethod())) {
+            throw new UnsupportedOperationException(exchange.getRequestMethod() + " is not supported, use " + method);
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, Map<String, Object> body) throws IOException {
+        byte[] bytes = GSON.toJson(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Turns what a handler throws into an error response: 400 for a bad request, 403 for a caller without the token or
+     * that isn't local, 405 for a wrong method and 500 for anything that went wrong while remapping.
+     */
+    private HttpHandler handler(Handler handler) {
+        return exchange -> {
+            try {
+                requireLocalCaller(exchange);
+                handler.handle(exchange);
+            } catch(Exception e) {
+                int status = e instanceof IllegalArgumentException ? 400 : e instanceof SecurityException ? 403
+                        : e instanceof UnsupportedOperationException ? 405 : 500;
+                Map<String, Object> error = Maps.newLinkedHashMap();
+                error.put("status", "ERROR");
+                error.put("error", e.getMessage() != null ? e.getMessage() : e.toString());
+                try {
+                    sendJson(exchange, status, error);
+                } catch(IOException | IllegalStateException ignored) {
+                    // the response was already started or the client went away
+                }
+            } finally {
+                exchange.close();
+            }
+        };
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+}
@@ -0,0 +1,213 @@
+package com.github.parker8283.bon2.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.github.parker8283.bon2.BON2Impl;
+import com.github.parker8283.bon2.data.MappingVersion;
+import com.github.parker8283.bon2.data.RemapOptions;
+import com.github.parker8283.bon2.srg.Repo;
+import com.github.parker8283.bon2.util.RemapMetrics;
+import com.google.common.collect.Maps;
+
+/**
+ * Keeps an output directory in sync with a directory of jars that keeps changing.<br/>
+ * Jars whose output is missing or older are remapped on start. After that a {@link WatchService} reports new, changed
+ * and deleted jars: a changed jar is remapped once nothing has written to it for {@link #SETTLE_MILLIS}, and the output
+ * of a deleted jar is deleted. Outputs are written to a temporary file and moved into place, so nothing ever reads a
+ * half written jar. The mapping table stays loaded for as long as the watch runs.
+ */
+public class WatchRemapper {
+    /** How long a jar must stay unchanged before it is remapped, so a copy in progress isn't picked up halfway. */
+    public static final long SETTLE_MILLIS = 1000;
+
+    private final MappingVersion mappings;
+    private final RemapOptions options;
+    private final Map<File, Pending> pending = Maps.newHashMap();
+    private MetricsWriter metrics;
+
+    public WatchRemapper(MappingVersion mappings, RemapOptions options) {
+        this.mappings = mappings;
+        this.options = options;
+    }
+
+    /**
+     * @param metrics Gets the metrics of every jar remapped, or null.
+     */
+    public WatchRemapper setMetrics(MetricsWriter metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Watches {@code inputDir} until the process is stopped.
+     */
+    public void run(File inputDir, File outputDir) throws IOException, InterruptedException {
+        if(!inputDir.isDirectory()) {
+            throw new IOException("Not a directory: " + inputDir);
+        }
+        if(!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Could not create output directory " + outputDir);
+        }
+        if(inputDir.getCanonicalFile().equals(outputDir.getCanonicalFile())) {
+            throw new IOException("The output directory must not be the watched directory");
+        }
+        Repo.getMappings(mappings, new CLIProgressListener());
+        try(WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            inputDir.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            scan(inputDir, outputDir); // after registering, so nothing that changes meanwhile is missed
+            System.out.println("Watching " + inputDir + " for changed jars, press Ctrl+C to stop");
+            while(true) {
+                WatchKey key = pending.isEmpty() ? watcher.take() : watcher.poll(SETTLE_MILLIS / 4, TimeUnit.MILLISECONDS);
+                if(key != null) {
+                    for(WatchEvent<?> event : key.pollEvents()) {
+                        if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            scan(inputDir, outputDir); // events were lost, compare everything again
+                            continue;
+                        }
+                        File input = new File(inputDir, ((Path)event.context()).toString());
+                        if(!isJar(input.getName())) {
+                            continue;
+                        }
+                        if(event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                            pending.remove(input);
+                            delete(input, new File(outputDir, input.getName()));
+                        } else {
+                            pending.put(input, new Pending(input));
+                        }
+                    }
+                    if(!key.reset()) {
+                        throw new IOException("Watched directory is no longer accessible: " + inputDir);
+                    }
+                }
+                remapSettled(outputDir);
+            }
+        }
+    }
+
+    /**
+     * Queues every jar whose output is missing or older than the jar itself.
+     */
+    private void scan(File inputDir, File outputDir) {
+        File[] jars = inputDir.listFiles((dir, name) -> isJar(name));
+        if(jars == null) {
+            return;
+        }
+        for(File jar : jars) {
+            File output = new File(outputDir, jar.getName());
+            if(!output.isFile() || output.lastModified() < jar.lastModified()) {
+                pending.put(jar, new Pending(jar));
+            }
+        }
+    }
+
+    private void remapSettled(File outputDir) {
+        long now = System.currentTimeMillis();
+        for(Iterator<Pending> it = pending.values().iterator(); it.hasNext();) {
+            Pending jar = it.next();
+            if(now - jar.lastChange < SETTLE_MILLIS) {
+                continue;
+            }
+            if(!jar.input.isFile()) {
+                it.remove(); // gone again before it settled, the delete event takes care of the output
+            } else if(jar.hasChanged()) {
+                jar.refresh(now); // still being written, even if the events haven't come in yet
+            } else {
+                it.remove();
+                remap(jar.input, new File(outputDir, jar.input.getName()));
+            }
+        }
+    }
+
+    private void remap(File input, File output) {
+        long start = System.nanoTime();
+        BatchRemapper.CollectingErrorHandler errors = new BatchRemapper.CollectingErrorHandler();
+        File temp = null;
+        String failure = null;
+        RemapMetrics runMetrics = new RemapMetrics();
+        try {
+            temp = File.createTempFile("." + output.getName(), ".tmp", output.getParentFile());
+            BON2Impl.remap(input, temp, mappings, options, errors, new BatchRemapper.SilentProgressListener(), runMetrics);
+            runMetrics.setOutput(output.getPath());
+            if(errors.errors > 0) {
+                failure = errors.errors + " class(es) could not be remapped, first: " + errors.firstError.replace('\n', ' ');
+            } else {
+                try {
+                    Files.move(temp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch(AtomicMoveNotSupportedException e) {
+                    Files.move(temp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } catch(Exception e) {
+            failure = e.toString();
+        } finally {
+            if(temp != null) {
+                temp.delete();
+            }
+        }
+        if(metrics != null) {
+            metrics.record(runMetrics);
+        }
+        long timeMillis = (System.nanoTime() - start) / 1000000;
+        String warnings = errors.warnings > 0 ? " (" + errors.warnings + " warning(s))" : "";
+        if(failure != null) {
+            log("FAILED   " + input.getName() + ": " + failure + ", keeping the previous output");
+        } else {
+            log(String.format(Locale.ROOT, "REMAPPED %s in %d ms%s", input.getName(), timeMillis, warnings));
+        }
+    }
+
+    private static void delete(File input, File output) {
+        if(output.isFile() && output.delete()) {
+            log("DELETED  " + output.getName() + ", " + input.getName() + " was removed");
+        }
+    }
+
+    private static boolean isJar(String name) {
+        return name.endsWith(".jar") && !name.startsWith(".");
+    }
+
+    private static void log(String message) {
+        System.out.println("[" + new SimpleDateFormat("HH:mm:ss", Locale.ROOT).format(new Date()) + "] " + message);
+    }
+
+    /**
+     * A jar waiting for its writes to settle.
+     */
+    private static class Pending {
+        final File input;
+        long size;
+        long lastModified;
+        long lastChange;
+
+        Pending(File input) {
+            this.input = input;
+            refresh(System.currentTimeMillis());
+        }
+
+        boolean hasChanged() {
+            return input.length() != size || input.lastModified() != lastModified;
+        }
+
+        void refresh(long now) {
+            size = input.length();
+            lastModified = input.lastModified();
+            lastChange = now;
+        }
+    }
+}
@@ -15,5 +15,9 @@ public class BONFiles {
     public static final File MINECRAFT_DE_FOLDER = new File(CACHES_MINECRAFT_FOLDER, "de");
     public static final File DE_OCEANLABS_FOLDER = new File(MINECRAFT_DE_FOLDER, "oceanlabs");
     public static final File OCEANLABS_MCP_FOLDER = new File(DE_OCEANLABS_FOLDER, "mcp");
+    public static final File BON_HOME_FOLDER = new File(System.getProperty("user.home"), ".bon2");
+    public static final File BON_CACHE_FOLDER = new File(BON_HOME_FOLDER, "cache");
+    public static final File BON_CLASS_CACHE_FOLDER = new File(BON_CACHE_FOLDER, "classes");
+    public static final File BON_JAR_CACHE_FOLDER = new File(BON_CACHE_FOLDER, "jars");
 
 }
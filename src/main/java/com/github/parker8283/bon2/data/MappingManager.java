@@ -100,8 +100,7 @@ public class MappingManager {
         }
         
         // Default to user home
-        File homeDir = new File(System.getProperty("user.home"), ".bon2");
-        File mappingsDir = new File(homeDir, "mappings");
+        File mappingsDir = new File(BONFiles.BON_HOME_FOLDER, "mappings");
         mappingsDir.mkdirs();
         return mappingsDir;
     }
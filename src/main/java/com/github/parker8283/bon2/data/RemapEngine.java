@@ -0,0 +1,21 @@
+package com.github.parker8283.bon2.data;
+
+import java.util.Locale;
+
+public enum RemapEngine {
+    /** Reads every class into a ClassNode tree and walks it with {@link com.github.parker8283.bon2.util.Remapper}. */
+    TREE,
+    /** Pipes each class through ClassReader -> remapping ClassVisitor -> ClassWriter, one entry at a time. */
+    STREAMING,
+    /** Rewrites SRG names directly in the constant pool of each class file and copies everything else verbatim, without ASM. */
+    CONSTANT_POOL;
+
+    public static RemapEngine getByName(String name) {
+        for(RemapEngine engine : RemapEngine.values()) {
+            if(engine.name().equals(name.toUpperCase(Locale.ROOT).replace('-', '_'))) {
+                return engine;
+            }
+        }
+        return null;
+    }
+}
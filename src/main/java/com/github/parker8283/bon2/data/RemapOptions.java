@@ -0,0 +1,146 @@
+package com.github.parker8283.bon2.data;
+
+import java.io.File;
+import java.util.zip.Deflater;
+
+import com.github.parker8283.bon2.io.ZipArchiveWriter;
+import com.google.common.base.Preconditions;
+
+/**
+ * Tuning knobs for a single remap run. Defaults to the streaming engine on every available processor, without any
+ * cache.
+ */
+public class RemapOptions {
+
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+    public static final long DEFAULT_CLASS_CACHE_SIZE = 512L * 1024 * 1024;
+    public static final long DEFAULT_JAR_CACHE_SIZE = 2048L * 1024 * 1024;
+
+    private RemapEngine engine = RemapEngine.STREAMING;
+    private int threads = DEFAULT_THREADS;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private File classCacheDir;
+    private long classCacheSize = DEFAULT_CLASS_CACHE_SIZE;
+    private File jarCacheDir;
+    private long jarCacheSize = DEFAULT_JAR_CACHE_SIZE;
+    private long maxMemory;
+
+    /**
+     * @return New options with the same settings, to be adjusted for a single job of a batch.
+     */
+    public RemapOptions copy() {
+        RemapOptions copy = new RemapOptions();
+        copy.engine = engine;
+        copy.threads = threads;
+        copy.compressionLevel = compressionLevel;
+        copy.classCacheDir = classCacheDir;
+        copy.classCacheSize = classCacheSize;
+        copy.jarCacheDir = jarCacheDir;
+        copy.jarCacheSize = jarCacheSize;
+        copy.maxMemory = maxMemory;
+        return copy;
+    }
+
+    public RemapEngine getEngine() {
+        return engine;
+    }
+
+    public RemapOptions setEngine(RemapEngine engine) {
+        this.engine = Preconditions.checkNotNull(engine);
+        return this;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public RemapOptions setThreads(int threads) {
+        Preconditions.checkArgument(threads > 0, "Thread count must be positive");
+        this.threads = threads;
+        return this;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @param compressionLevel A {@link Deflater} level from 1 to 9, {@link Deflater#DEFAULT_COMPRESSION}, or
+     *                         {@link ZipArchiveWriter#STORED} to write entries uncompressed.
+     */
+    public RemapOptions setCompressionLevel(int compressionLevel) {
+        Preconditions.checkArgument(compressionLevel >= Deflater.DEFAULT_COMPRESSION && compressionLevel <= Deflater.BEST_COMPRESSION, "Invalid compression level %s", compressionLevel);
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public File getClassCacheDir() {
+        return classCacheDir;
+    }
+
+    /**
+     * @param classCacheDir Where remapped classes are kept for later runs, see {@link com.github.parker8283.bon2.util.ClassCache}.
+     *                      Null disables the cache.
+     */
+    public RemapOptions setClassCacheDir(File classCacheDir) {
+        this.classCacheDir = classCacheDir;
+        return this;
+    }
+
+    public long getClassCacheSize() {
+        return classCacheSize;
+    }
+
+    public RemapOptions setClassCacheSize(long classCacheSize) {
+        Preconditions.checkArgument(classCacheSize > 0, "Class cache size must be positive");
+        this.classCacheSize = classCacheSize;
+        return this;
+    }
+
+    public File getJarCacheDir() {
+        return jarCacheDir;
+    }
+
+    /**
+     * @param jarCacheDir Where complete output jars are kept for later runs, see {@link com.github.parker8283.bon2.util.JarCache}.
+     *                    Null disables the cache.
+     */
+    public RemapOptions setJarCacheDir(File jarCacheDir) {
+        this.jarCacheDir = jarCacheDir;
+        return this;
+    }
+
+    public long getJarCacheSize() {
+        return jarCacheSize;
+    }
+
+    public RemapOptions setJarCacheSize(long jarCacheSize) {
+        Preconditions.checkArgument(jarCacheSize > 0, "Jar cache size must be positive");
+        this.jarCacheSize = jarCacheSize;
+        return this;
+    }
+
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * @param maxMemory How many bytes of heap the entries being remapped may hold at once, or 0 for no limit. With a
+     *                  limit, every engine remaps the jar entry by entry, see
+     *                  {@link com.github.parker8283.bon2.util.StreamingRemapper}.
+     */
+    public RemapOptions setMaxMemory(long maxMemory) {
+        Preconditions.checkArgument(maxMemory >= 0, "Memory limit must not be negative");
+        this.maxMemory = maxMemory;
+        return this;
+    }
+
+    /**
+     * Turns off every cache for this run.
+     */
+    public RemapOptions disableCaches() {
+        classCacheDir = null;
+        jarCacheDir = null;
+        return this;
+    }
+}
@@ -8,11 +8,13 @@ import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JProgressBar;
+import javax.swing.JSpinner;
 import javax.swing.JTextField;
 
 import com.github.parker8283.bon2.BON2Gui;
 import com.github.parker8283.bon2.BON2Impl;
 import com.github.parker8283.bon2.data.MappingVersion;
+import com.github.parker8283.bon2.data.RemapOptions;
 
 public class StartListener extends MouseAdapter {
     private BON2Gui parent;
@@ -20,14 +22,16 @@ public class StartListener extends MouseAdapter {
     private JTextField input;
     private JTextField output;
     private JComboBox<MappingVersion> forgeVer;
+    private JSpinner threads;
     private JLabel progressLabel;
     private JProgressBar progressBar;
 
-    public StartListener(BON2Gui parent, JTextField input, JTextField output, JComboBox<MappingVersion> forgeVer, JLabel progressLabel, JProgressBar progressBar) {
+    public StartListener(BON2Gui parent, JTextField input, JTextField output, JComboBox<MappingVersion> forgeVer, JSpinner threads, JLabel progressLabel, JProgressBar progressBar) {
         this.parent = parent;
         this.input = input;
         this.output = output;
         this.forgeVer = forgeVer;
+        this.threads = threads;
         this.progressLabel = progressLabel;
         this.progressBar = progressBar;
     }
@@ -40,11 +44,12 @@ public class StartListener extends MouseAdapter {
         if(run != null && run.isAlive()) {
             return;
         }
+        RemapOptions options = new RemapOptions().setThreads((Integer)threads.getValue());
         run = new Thread("BON2 Remapping Thread") {
             @Override
             public void run() {
                 try {
-                    BON2Impl.remap(new File(input.getText()), new File(output.getText()), forgeVer.getItemAt(forgeVer.getSelectedIndex()), new GUIErrorHandler(parent), new GUIProgressListener(progressLabel, progressBar));
+                    BON2Impl.remap(new File(input.getText()), new File(output.getText()), forgeVer.getItemAt(forgeVer.getSelectedIndex()), options, new GUIErrorHandler(parent), new GUIProgressListener(progressLabel, progressBar));
                 } catch(Exception ex) {
                     JOptionPane.showMessageDialog(parent, "There was an error.\n" + ex.toString() + "\n" + getFormattedStackTrace(ex.getStackTrace()), BON2Gui.ERROR_DIALOG_TITLE, JOptionPane.ERROR_MESSAGE);
                 }
@@ -7,6 +7,7 @@ import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
+import java.util.zip.ZipException;
 
 /**
  * Fixes bug with JRE that expects the Manifest to always be the first entry in META-INF, when in some cases, it isn't.<br/>
@@ -17,7 +18,13 @@ public class FixedJarInputStream extends JarInputStream {
 
     public FixedJarInputStream(File file, boolean verify) throws IOException {
         super(new FileInputStream(file), verify);
-        JarFile jar = new JarFile(file);
+        JarFile jar;
+        try {
+            jar = new JarFile(file);
+        } catch(ZipException e) {
+            this.manifest = super.getManifest(); // no central directory to look it up in, take it if it came first
+            return;
+        }
         JarEntry manifestEntry = jar.getJarEntry(JarFile.MANIFEST_NAME);
         try {
             if (manifestEntry != null) {
@@ -0,0 +1,351 @@
+package com.github.parker8283.bon2.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Random-access view of a zip/jar built from its central directory.<br/>
+ * The file is opened once, and entries are read with positional reads, so any number of threads can inflate entries at
+ * the same time. Unlike {@link FixedJarInputStream}, the manifest is found wherever it is stored in the archive.
+ */
+public class ZipArchive implements Closeable {
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private final File file;
+    private final FileChannel channel;
+    private final List<Entry> entries;
+
+    public ZipArchive(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            this.entries = Collections.unmodifiableList(readCentralDirectory());
+        } catch(IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return All entries, in central directory order.
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public Entry getEntry(String name) {
+        for(Entry entry : entries) {
+            if(entry.getName().equals(name)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    public Manifest getManifest() throws IOException {
+        Entry entry = getEntry(JarFile.MANIFEST_NAME);
+        return entry != null ? new Manifest(new ByteArrayInputStream(read(entry))) : null;
+    }
+
+    /**
+     * Reads and inflates an entry. Safe to call from several threads at once.
+     */
+    public byte[] read(Entry entry) throws IOException {
+        if((entry.getFlags() & 1) != 0) {
+            throw new ZipException("Encrypted entries are not supported: " + entry.getName());
+        }
+        byte[] raw = readRaw(entry);
+        byte[] data;
+        if(entry.getMethod() == ZipEntry.STORED) {
+            data = raw;
+        } else if(entry.getMethod() == ZipEntry.DEFLATED) {
+            data = new byte[checkedSize(entry.getSize(), entry)];
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(raw);
+                int read = 0;
+                while(read < data.length) {
+                    int n = inflater.inflate(data, read, data.length - read);
+                    if(n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    read += n;
+                }
+                if(read != data.length) {
+                    throw new ZipException("Truncated data for entry " + entry.getName());
+                }
+            } catch(DataFormatException e) {
+                throw new ZipException("Invalid deflate data for entry " + entry.getName() + ": " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+        } else {
+            throw new ZipException("Unsupported compression method " + entry.getMethod() + " for entry " + entry.getName());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        if(crc.getValue() != entry.getCrc()) {
+            throw new ZipException("CRC mismatch for entry " + entry.getName());
+        }
+        return data;
+    }
+
+    /**
+     * Whether the entry can be copied to another archive as-is, without inflating it.
+     */
+    public static boolean canCopyRaw(Entry entry) {
+        return (entry.getFlags() & 1) == 0 && (entry.getMethod() == ZipEntry.STORED || entry.getMethod() == ZipEntry.DEFLATED);
+    }
+
+    /**
+     * Copies the still-compressed data of an entry to {@code target} without pulling it onto the heap.
+     */
+    public void transferRaw(Entry entry, WritableByteChannel target) throws IOException {
+        long position = getDataOffset(entry);
+        long remaining = entry.getCompressedSize();
+        while(remaining > 0) {
+            long transferred = channel.transferTo(position, remaining, target);
+            if(transferred <= 0) {
+                throw new EOFException("Unexpected end of " + file);
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+    }
+
+    private byte[] readRaw(Entry entry) throws IOException {
+        return readFully(ByteBuffer.allocate(checkedSize(entry.getCompressedSize(), entry)), getDataOffset(entry)).array();
+    }
+
+    private long getDataOffset(Entry entry) throws IOException {
+        long dataOffset = entry.dataOffset;
+        if(dataOffset < 0) {
+            ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if(readFully(header, entry.getLocalHeaderOffset()).getInt(0) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid local header for entry " + entry.getName());
+            }
+            dataOffset = entry.getLocalHeaderOffset() + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+            entry.dataOffset = dataOffset;
+        }
+        return dataOffset;
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        long fileSize = channel.size();
+        if(fileSize < END_HEADER_SIZE) {
+            throw new ZipException("Not a zip file: " + file);
+        }
+        int tailSize = (int)Math.min(fileSize, END_HEADER_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = ByteBuffer.allocate(tailSize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(tail, fileSize - tailSize);
+        int end = -1;
+        for(int i = tailSize - END_HEADER_SIZE; i >= 0; i--) {
+            if(tail.getInt(i) == END_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if(end < 0) {
+            throw new ZipException("Could not find the end of central directory in " + file);
+        }
+        long endPosition = fileSize - tailSize + end;
+        long count = tail.getShort(end + 10) & 0xFFFF;
+        long cdSize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long cdOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        if(count == 0xFFFF || cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL) {
+            ByteBuffer locator = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+            if(endPosition < 20 || readFully(locator, endPosition - 20).getInt(0) != ZIP64_LOCATOR_SIGNATURE) {
+                throw new ZipException("Missing zip64 end of central directory locator in " + file);
+            }
+            endPosition = locator.getLong(8);
+            ByteBuffer zip64 = readFully(ByteBuffer.allocate(56).order(ByteOrder.LITTLE_ENDIAN), endPosition);
+            if(zip64.getInt(0) != ZIP64_END_SIGNATURE) {
+                throw new ZipException("Invalid zip64 end of central directory in " + file);
+            }
+            count = zip64.getLong(32);
+            cdSize = zip64.getLong(40);
+            cdOffset = zip64.getLong(48);
+        }
+        // Anything in front of the archive (self-extracting stubs and the like) shifts every offset
+        long base = endPosition - cdSize - cdOffset;
+        if(base < 0 || cdSize > Integer.MAX_VALUE) {
+            throw new ZipException("Invalid central directory in " + file);
+        }
+
+        ByteBuffer cd = ByteBuffer.allocate((int)cdSize).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(cd, base + cdOffset);
+        List<Entry> result = new ArrayList<>((int)Math.min(count, 1 << 16));
+        int pos = 0;
+        while(pos + 46 <= cdSize && cd.getInt(pos) == CENTRAL_HEADER_SIGNATURE) {
+            int flags = cd.getShort(pos + 8) & 0xFFFF;
+            int method = cd.getShort(pos + 10) & 0xFFFF;
+            long dosTime = cd.getInt(pos + 12) & 0xFFFFFFFFL;
+            long crc = cd.getInt(pos + 16) & 0xFFFFFFFFL;
+            long compressedSize = cd.getInt(pos + 20) & 0xFFFFFFFFL;
+            long size = cd.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLength = cd.getShort(pos + 28) & 0xFFFF;
+            int extraLength = cd.getShort(pos + 30) & 0xFFFF;
+            int commentLength = cd.getShort(pos + 32) & 0xFFFF;
+            long localHeaderOffset = cd.getInt(pos + 42) & 0xFFFFFFFFL;
+            if(pos + 46 + nameLength + extraLength > cdSize) {
+                throw new ZipException("Truncated central directory in " + file);
+            }
+            String name = new String(cd.array(), pos + 46, nameLength, StandardCharsets.UTF_8);
+
+            if(size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+                int extra = pos + 46 + nameLength;
+                int extraEnd = extra + extraLength;
+                while(extra + 4 <= extraEnd) {
+                    int id = cd.getShort(extra) & 0xFFFF;
+                    int length = cd.getShort(extra + 2) & 0xFFFF;
+                    if(id == ZIP64_EXTRA_ID) {
+                        int field = extra + 4;
+                        if(size == 0xFFFFFFFFL) {
+                            size = cd.getLong(field);
+                            field += 8;
+                        }
+                        if(compressedSize == 0xFFFFFFFFL) {
+                            compressedSize = cd.getLong(field);
+                            field += 8;
+                        }
+                        if(localHeaderOffset == 0xFFFFFFFFL) {
+                            localHeaderOffset = cd.getLong(field);
+                        }
+                        break;
+                    }
+                    extra += 4 + length;
+                }
+            }
+            result.add(new Entry(name, method, flags, dosTime, crc, compressedSize, size, base + localHeaderOffset));
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+        if(result.size() != count) {
+            throw new ZipException("Central directory of " + file + " lists " + count + " entries but contains " + result.size());
+        }
+        return result;
+    }
+
+    private ByteBuffer readFully(ByteBuffer buffer, long position) throws IOException {
+        while(buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if(read < 0) {
+                throw new EOFException("Unexpected end of " + file);
+            }
+            position += read;
+        }
+        return buffer;
+    }
+
+    private static int checkedSize(long size, Entry entry) throws ZipException {
+        if(size > Integer.MAX_VALUE - 8) {
+            throw new ZipException("Entry too large to load into memory: " + entry.getName());
+        }
+        return (int)size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public static class Entry {
+        private final String name;
+        private final int method;
+        private final int flags;
+        private final long dosTime;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+        private volatile long dataOffset = -1;
+
+        Entry(String name, int method, int flags, long dosTime, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.flags = flags;
+            this.dosTime = dosTime;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+
+        /**
+         * @return {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}.
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        public int getFlags() {
+            return flags;
+        }
+
+        /**
+         * @return Modification time and date, packed in MS-DOS format as stored in the archive.
+         */
+        public long getDosTime() {
+            return dosTime;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLocalHeaderOffset() {
+            return localHeaderOffset;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.github.parker8283.bon2.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes a zip/jar from entries that were already compressed, typically on other threads.<br/>
+ * Since the CRC and both sizes are known up front, every local header is complete and no data descriptors are needed,
+ * which also means the target never has to be seekable.
+ */
+public class ZipArchiveWriter implements Closeable {
+    /** Pass as compression level to store entries without compressing them. */
+    public static final int STORED = 0;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int UTF8_FLAG = 0x800;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private final OutputStream out;
+    private final WritableByteChannel rawTarget;
+    private final long dosTime = toDosTime(System.currentTimeMillis());
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private long offset = 0;
+    private long entryCount = 0;
+
+    public ZipArchiveWriter(OutputStream out) {
+        this.out = out;
+        this.rawTarget = Channels.newChannel(out);
+    }
+
+    /**
+     * Compresses {@code data} into a record ready to be written. Safe to call from any thread.
+     * @param level A {@link Deflater} level, or {@link #STORED}.
+     */
+    public static Record compress(String name, byte[] data, int level) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        if(level == STORED) {
+            return new Record(name, ZipEntry.STORED, crc.getValue(), data.length, data);
+        }
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+            byte[] buffer = new byte[Math.max(1024, Math.min(data.length, 64 * 1024))];
+            while(!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                compressed.write(buffer, 0, n);
+            }
+            return new Record(name, ZipEntry.DEFLATED, crc.getValue(), data.length, compressed.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Writes a record. A record that was {@link Record#spill spilled} is streamed from its file, which is deleted after.
+     */
+    public void write(Record record) throws IOException {
+        writeLocalHeader(record.name, record.method, dosTime, record.crc, record.compressedSize, record.size);
+        if(record.spillFile == null) {
+            out.write(record.data);
+        } else {
+            try(FileChannel channel = FileChannel.open(record.spillFile.toPath(), StandardOpenOption.READ)) {
+                long position = 0;
+                while(position < record.compressedSize) {
+                    long transferred = channel.transferTo(position, record.compressedSize - position, rawTarget);
+                    if(transferred <= 0) {
+                        throw new IOException("Spill file of " + record.name + " is truncated: " + record.spillFile);
+                    }
+                    position += transferred;
+                }
+            } finally {
+                record.discard();
+            }
+        }
+        offset += record.compressedSize;
+    }
+
+    /**
+     * Copies an entry from another archive verbatim: same compression method, CRC, sizes and timestamp.
+     * The data is streamed from the source file, never inflated or held in memory.
+     */
+    public void writeRaw(ZipArchive source, ZipArchive.Entry entry) throws IOException {
+        writeLocalHeader(entry.getName(), entry.getMethod(), entry.getDosTime(), entry.getCrc(), entry.getCompressedSize(), entry.getSize());
+        source.transferRaw(entry, rawTarget);
+        offset += entry.getCompressedSize();
+    }
+
+    public void writeDirectory(String name) throws IOException {
+        writeLocalHeader(name, ZipEntry.STORED, dosTime, 0, 0, 0);
+    }
+
+    private void writeLocalHeader(String name, int method, long dosTime, long crc, long compressedSize, long size) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int version = method == ZipEntry.DEFLATED ? 20 : 10;
+        ByteBuffer header = ByteBuffer.allocate(30 + nameBytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_HEADER_SIGNATURE)
+              .putShort((short)version)
+              .putShort((short)UTF8_FLAG)
+              .putShort((short)method)
+              .putInt((int)dosTime)
+              .putInt((int)crc)
+              .putInt((int)compressedSize)
+              .putInt((int)size)
+              .putShort((short)nameBytes.length)
+              .putShort((short)0)
+              .put(nameBytes);
+        out.write(header.array());
+
+        boolean zip64 = offset >= ZIP64_MAGIC;
+        ByteBuffer central = ByteBuffer.allocate(46 + nameBytes.length + (zip64 ? 12 : 0)).order(ByteOrder.LITTLE_ENDIAN);
+        central.putInt(CENTRAL_HEADER_SIGNATURE)
+               .putShort((short)(zip64 ? 45 : version))
+               .putShort((short)(zip64 ? 45 : version))
+               .putShort((short)UTF8_FLAG)
+               .putShort((short)method)
+               .putInt((int)dosTime)
+               .putInt((int)crc)
+               .putInt((int)compressedSize)
+               .putInt((int)size)
+               .putShort((short)nameBytes.length)
+               .putShort((short)(zip64 ? 12 : 0))
+               .putShort((short)0) // comment
+               .putShort((short)0) // disk
+               .putShort((short)0) // internal attributes
+               .putInt(0) // external attributes
+               .putInt((int)(zip64 ? ZIP64_MAGIC : offset))
+               .put(nameBytes);
+        if(zip64) {
+            central.putShort((short)0x0001).putShort((short)8).putLong(offset);
+        }
+        centralDirectory.write(central.array());
+
+        offset += header.capacity();
+        entryCount++;
+    }
+
+    /**
+     * @return Number of bytes written to the underlying stream so far.
+     */
+    public long getBytesWritten() {
+        return offset;
+    }
+
+    /**
+     * Writes the central directory and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            long cdOffset = offset;
+            long cdSize = centralDirectory.size();
+            centralDirectory.writeTo(out);
+            offset += cdSize;
+            boolean zip64 = entryCount >= 0xFFFF || cdOffset >= ZIP64_MAGIC;
+            if(zip64) {
+                ByteBuffer end64 = ByteBuffer.allocate(56 + 20).order(ByteOrder.LITTLE_ENDIAN);
+                end64.putInt(ZIP64_END_SIGNATURE)
+                     .putLong(44)
+                     .putShort((short)45)
+                     .putShort((short)45)
+                     .putInt(0)
+                     .putInt(0)
+                     .putLong(entryCount)
+                     .putLong(entryCount)
+                     .putLong(cdSize)
+                     .putLong(cdOffset);
+                end64.putInt(ZIP64_LOCATOR_SIGNATURE)
+                     .putInt(0)
+                     .putLong(offset)
+                     .putInt(1);
+                out.write(end64.array());
+            }
+            ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(END_SIGNATURE)
+               .putShort((short)0)
+               .putShort((short)0)
+               .putShort((short)(zip64 ? 0xFFFF : entryCount))
+               .putShort((short)(zip64 ? 0xFFFF : entryCount))
+               .putInt((int)cdSize)
+               .putInt((int)(zip64 ? ZIP64_MAGIC : cdOffset))
+               .putShort((short)0);
+            out.write(end.array());
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static long toDosTime(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        if(year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21 | calendar.get(Calendar.DAY_OF_MONTH) << 16
+                | calendar.get(Calendar.HOUR_OF_DAY) << 11 | calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    /**
+     * A compressed entry along with everything needed to write its headers. The compressed data is either on the heap or,
+     * once {@link #spill spilled}, in a temporary file.
+     */
+    public static class Record {
+        private final String name;
+        private final int method;
+        private final long crc;
+        private final long size;
+        private final long compressedSize;
+        private final byte[] data;
+        private final File spillFile;
+
+        public Record(String name, int method, long crc, long size, byte[] data) {
+            this(name, method, crc, size, data.length, data, null);
+        }
+
+        private Record(String name, int method, long crc, long size, long compressedSize, byte[] data, File spillFile) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+            this.data = data;
+            this.spillFile = spillFile;
+        }
+
+        /**
+         * Moves the compressed data to a temporary file in {@code dir}, so it doesn't take up heap while the record waits
+         * to be written.
+         * @return A record backed by that file. It is deleted once the record is written or {@link #discard discarded}.
+         */
+        public Record spill(File dir) throws IOException {
+            if(spillFile != null) {
+                return this;
+            }
+            File file = File.createTempFile("bon2-", ".spill", dir);
+            try {
+                Files.write(file.toPath(), data);
+            } catch(IOException e) {
+                file.delete();
+                throw e;
+            }
+            return new Record(name, method, crc, size, compressedSize, null, file);
+        }
+
+        /**
+         * Deletes the spill file of a record that won't be written.
+         */
+        public void discard() {
+            if(spillFile != null) {
+                spillFile.delete();
+            }
+        }
+
+        public boolean isSpilled() {
+            return spillFile != null;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        /**
+         * @return The compressed data, or null if the record was spilled.
+         */
+        public byte[] getData() {
+            return data;
+        }
+    }
+}
@@ -1,20 +1,49 @@
 package com.github.parker8283.bon2.srg;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.jar.Manifest;
 
 import org.objectweb.asm.tree.ClassNode;
 
-public class ClassCollection {
+import com.github.parker8283.bon2.io.ZipArchive;
+import com.google.common.hash.HashCode;
+
+public class ClassCollection implements Closeable {
     private List<ClassNode> classes;
     private Manifest manifest;
     private Map<String, byte[]> extraFiles;
+    private ZipArchive source;
+    private List<ZipArchive.Entry> rawFiles;
+    private Map<String, HashCode> cacheKeys;
 
     public ClassCollection(List<ClassNode> classes, Manifest manifest, Map<String, byte[]> extraFiles) {
+        this(classes, manifest, extraFiles, null, Collections.<ZipArchive.Entry>emptyList());
+    }
+
+    /**
+     * @param source The archive {@code rawFiles} are copied from when the collection is written. Stays open until
+     *               {@link #close()} is called.
+     * @param rawFiles Entries that are written exactly as they are stored in {@code source}, still compressed.
+     */
+    public ClassCollection(List<ClassNode> classes, Manifest manifest, Map<String, byte[]> extraFiles, ZipArchive source, List<ZipArchive.Entry> rawFiles) {
+        this(classes, manifest, extraFiles, source, rawFiles, Collections.<String, HashCode>emptyMap());
+    }
+
+    /**
+     * @param cacheKeys The {@link com.github.parker8283.bon2.util.ClassCache} key of each class, by class name, for the
+     *                  classes that missed the cache and should be stored once remapped.
+     */
+    public ClassCollection(List<ClassNode> classes, Manifest manifest, Map<String, byte[]> extraFiles, ZipArchive source, List<ZipArchive.Entry> rawFiles, Map<String, HashCode> cacheKeys) {
         this.classes = classes;
         this.manifest = manifest;
         this.extraFiles = extraFiles;
+        this.source = source;
+        this.rawFiles = rawFiles;
+        this.cacheKeys = cacheKeys;
     }
 
     public List<ClassNode> getClasses() {
@@ -29,6 +58,25 @@ public class ClassCollection {
         return extraFiles;
     }
 
+    public ZipArchive getSource() {
+        return source;
+    }
+
+    public List<ZipArchive.Entry> getRawFiles() {
+        return rawFiles;
+    }
+
+    public Map<String, HashCode> getCacheKeys() {
+        return cacheKeys;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(source != null) {
+            source.close();
+        }
+    }
+
     @Override
     public boolean equals(Object o) {
         if(this == o) {
@@ -49,6 +97,9 @@ public class ClassCollection {
         if(manifest != null ? !manifest.equals(that.manifest) : that.manifest != null) {
             return false;
         }
+        if(rawFiles != null ? !rawFiles.equals(that.rawFiles) : that.rawFiles != null) {
+            return false;
+        }
 
         return true;
     }
@@ -58,6 +109,7 @@ public class ClassCollection {
         int result = classes != null ? classes.hashCode() : 0;
         result = 31 * result + (manifest != null ? manifest.hashCode() : 0);
         result = 31 * result + (extraFiles != null ? extraFiles.hashCode() : 0);
+        result = 31 * result + (rawFiles != null ? rawFiles.hashCode() : 0);
         return result;
     }
 }
@@ -0,0 +1,278 @@
+package com.github.parker8283.bon2.srg;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.github.parker8283.bon2.data.BONFiles;
+import com.google.common.hash.Hashing;
+
+/**
+ * Compiled form of a mapping directory's CSVs, so that later runs don't have to parse them again.<br/>
+ * Stored as {@value #FILE_NAME} next to the CSVs, or under {@link BONFiles#BON_CACHE_FOLDER} when that directory isn't
+ * writable. This is a binary deserializer only: loading maps the file read-only and decodes every entry into a
+ * {@link MappingTable} on the heap, which is still much faster than parsing the CSVs, but lookups don't go to the mapped
+ * file. A cache stays valid while every CSV keeps its size and modification time or, failing that, its CRC, and
+ * {@code params.csv} doesn't appear or disappear. When only the modification times changed, the ones in the header are
+ * brought up to date so later runs don't compute the CRCs again.
+ * <p>
+ * Layout, big-endian: magic, format version, size/mtime/CRC of each CSV and the position of the string pool. Then for
+ * methods and for fields a count followed by the sorted ids and the matching string pool offsets, then the count and
+ * offsets of the irregular names, the same for parameter names, and finally the string pool. A pool entry is the SRG name followed by the MCP name,
+ * each as an unsigned short length and UTF-8 bytes.
+ */
+public class MappingCache {
+    public static final String FILE_NAME = "mappings.bon2cache";
+
+    private static final int MAGIC = 0x424F4E32; // "BON2"
+    private static final int FORMAT_VERSION = 2;
+    private static final String[] SOURCES = {Repo.FIELDS_CSV, Repo.METHODS_CSV, Repo.PARAMS_CSV};
+
+    /**
+     * @return The table compiled from {@code srgsDir}, or null if there is no valid cache for it.
+     */
+    public static MappingTable load(File srgsDir) {
+        for(File file : new File[] {new File(srgsDir, FILE_NAME), getFallbackFile(srgsDir)}) {
+            if(file.isFile()) {
+                MappingTable table = load(srgsDir, file);
+                if(table != null) {
+                    return table;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static MappingTable load(File srgsDir, File file) {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                return null;
+            }
+            boolean touched = false;
+            for(String source : SOURCES) {
+                File csv = new File(srgsDir, source);
+                long size = buffer.getLong();
+                long lastModified = buffer.getLong();
+                long crc = buffer.getLong();
+                if(getSize(csv) != size) {
+                    return null;
+                }
+                if(size >= 0 && csv.lastModified() != lastModified) {
+                    if(getCrc(csv) != crc) {
+                        return null;
+                    }
+                    touched = true;
+                }
+            }
+            int poolStart = buffer.getInt();
+
+            MappingTable table = new MappingTable();
+            byte[] scratch = new byte[256];
+            for(boolean method : new boolean[] {true, false}) {
+                int count = buffer.getInt();
+                int idsStart = buffer.position();
+                int offsetsStart = idsStart + count * 4;
+                for(int i = 0; i < count; i++) {
+                    int id = buffer.getInt(idsStart + i * 4);
+                    int entry = poolStart + buffer.getInt(offsetsStart + i * 4);
+                    String srgName = readString(buffer, entry, scratch);
+                    String mcpName = readString(buffer, entry + 2 + (buffer.getShort(entry) & 0xFFFF), scratch);
+                    table.put(method, id, srgName, mcpName);
+                }
+                buffer.position(offsetsStart + count * 4);
+            }
+            int irregularCount = buffer.getInt();
+            for(int i = 0; i < irregularCount; i++) {
+                int entry = poolStart + buffer.getInt();
+                String srgName = readString(buffer, entry, scratch);
+                table.put(srgName, readString(buffer, entry + 2 + (buffer.getShort(entry) & 0xFFFF), scratch));
+            }
+            int paramCount = buffer.getInt();
+            for(int i = 0; i < paramCount; i++) {
+                int entry = poolStart + buffer.getInt();
+                String srgName = readString(buffer, entry, scratch);
+                table.putParam(srgName, readString(buffer, entry + 2 + (buffer.getShort(entry) & 0xFFFF), scratch));
+            }
+            if(touched) {
+                updateTimestamps(srgsDir, file);
+            }
+            return table;
+        } catch(IOException | RuntimeException e) {
+            return null; // unreadable or truncated, compile it again
+        }
+    }
+
+    /**
+     * Writes the current modification times of the CSVs into the header of {@code file}, whose contents are known to
+     * match them. Failing to is harmless, the CRCs are just checked again next time.
+     */
+    private static void updateTimestamps(File srgsDir, File file) {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            ByteBuffer timestamp = ByteBuffer.allocate(8);
+            for(int i = 0; i < SOURCES.length; i++) {
+                timestamp.clear();
+                timestamp.putLong(new File(srgsDir, SOURCES[i]).lastModified()).flip();
+                channel.write(timestamp, 8 + i * 24 + 8); // after magic and version, then size, mtime and CRC per CSV
+            }
+        } catch(IOException e) {
+            // read-only cache, keep checking the CRCs
+        }
+    }
+
+    private static String readString(MappedByteBuffer buffer, int position, byte[] scratch) {
+        int length = buffer.getShort(position) & 0xFFFF;
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        for(int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(position + 2 + i);
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compiles {@code table} for {@code srgsDir}. Failing to write the cache is not an error, the next run simply parses
+     * the CSVs again.
+     */
+    public static void save(File srgsDir, MappingTable table) {
+        byte[] data;
+        try {
+            data = compile(srgsDir, table);
+        } catch(IOException e) {
+            return;
+        }
+        if(!write(new File(srgsDir, FILE_NAME), data)) {
+            File fallback = getFallbackFile(srgsDir);
+            if(fallback.getParentFile().isDirectory() || fallback.getParentFile().mkdirs()) {
+                write(fallback, data);
+            }
+        }
+    }
+
+    private static byte[] compile(File srgsDir, MappingTable table) throws IOException {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        ByteArrayOutputStream pool = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(index);
+        DataOutputStream poolOut = new DataOutputStream(pool);
+        for(boolean method : new boolean[] {true, false}) {
+            int[] ids = table.getSortedIds(method);
+            out.writeInt(ids.length);
+            for(int id : ids) {
+                out.writeInt(id);
+            }
+            for(int id : ids) {
+                out.writeInt(pool.size());
+                writeString(poolOut, table.getSrgName(method, id));
+                writeString(poolOut, table.getMcpName(method, id));
+            }
+        }
+        for(Map<String, String> names : Arrays.asList(table.getIrregular(), table.getParams())) {
+            out.writeInt(names.size());
+            for(Map.Entry<String, String> entry : names.entrySet()) {
+                out.writeInt(pool.size());
+                writeString(poolOut, entry.getKey());
+                writeString(poolOut, entry.getValue());
+            }
+        }
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream(8 + SOURCES.length * 24 + 4 + index.size() + pool.size());
+        DataOutputStream header = new DataOutputStream(file);
+        header.writeInt(MAGIC);
+        header.writeInt(FORMAT_VERSION);
+        for(String source : SOURCES) {
+            File csv = new File(srgsDir, source);
+            header.writeLong(getSize(csv));
+            header.writeLong(csv.lastModified());
+            header.writeLong(getCrc(csv));
+        }
+        header.writeInt(file.size() + 4 + index.size());
+        index.writeTo(file);
+        pool.writeTo(file);
+        return file.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes to a temporary file first and moves it into place, so other processes never map a half-written cache.
+     */
+    private static boolean write(File target, byte[] data) {
+        File temp = null;
+        try {
+            temp = File.createTempFile(FILE_NAME, ".tmp", target.getParentFile());
+            try(OutputStream out = new FileOutputStream(temp)) {
+                out.write(data);
+            }
+            try {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch(AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch(IOException e) {
+            if(temp != null) {
+                temp.delete();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return A key that changes whenever {@code srgsDir} or one of its CSVs does, without reading any of them.
+     */
+    static String getFingerprint(File srgsDir) {
+        StringBuilder fingerprint = new StringBuilder(srgsDir.getAbsolutePath());
+        for(String source : SOURCES) {
+            File csv = new File(srgsDir, source);
+            fingerprint.append('|').append(getSize(csv)).append(':').append(csv.lastModified());
+        }
+        return fingerprint.toString();
+    }
+
+    private static File getFallbackFile(File srgsDir) {
+        String path = srgsDir.getAbsoluteFile().toURI().toString();
+        String hash = Hashing.sha1().hashString(path, StandardCharsets.UTF_8).toString().substring(0, 16);
+        return new File(BONFiles.BON_CACHE_FOLDER, hash + "-" + FILE_NAME);
+    }
+
+    /**
+     * @return The size of {@code csv}, or -1 if there is no such file.
+     */
+    private static long getSize(File csv) {
+        return csv.isFile() ? csv.length() : -1;
+    }
+
+    private static long getCrc(File file) throws IOException {
+        if(!file.isFile()) {
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        try(InputStream in = new FileInputStream(file)) {
+            int n;
+            while((n = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+}
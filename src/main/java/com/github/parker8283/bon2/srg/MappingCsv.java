@@ -0,0 +1,176 @@
+package com.github.parker8283.bon2.srg;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * The SRG and MCP name columns of an MCP mapping CSV ({@code fields.csv}, {@code methods.csv} or {@code params.csv}).<br/>
+ * The file is parsed as raw bytes through a fixed buffer. Quoting follows RFC 4180, so commas, quotes and line breaks
+ * inside quoted fields are fine. Columns that aren't needed, like the long {@code desc}, are skipped without being copied.
+ */
+class MappingCsv {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String[] KEY_COLUMNS = {"searge", "param"};
+    private static final String NAME_COLUMN = "name";
+
+    private final String file;
+    private String[] srgNames = new String[1024];
+    private String[] mcpNames = new String[1024];
+    private int size;
+
+    // Parser state
+    private final List<String> header = Lists.newArrayList();
+    private int keyColumn = 0;
+    private int nameColumn = 1;
+    private byte[] field = new byte[128];
+    private int fieldLength;
+    private boolean fieldStarted;
+    private int column;
+    private boolean headerDone;
+    private String key;
+    private String name;
+
+    private MappingCsv(String file) {
+        this.file = file;
+    }
+
+    static MappingCsv read(File file) throws IOException {
+        MappingCsv csv = new MappingCsv(file.getName());
+        try(InputStream in = new FileInputStream(file)) {
+            csv.parse(in);
+        }
+        return csv;
+    }
+
+    String getFileName() {
+        return file;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String getSrgName(int index) {
+        return srgNames[index];
+    }
+
+    String getMcpName(int index) {
+        return mcpNames[index];
+    }
+
+    private void parse(InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        boolean quoted = false;
+        boolean quoteInQuoted = false; // either the closing quote or the first half of an escaped one
+        int n;
+        while((n = in.read(buffer)) != -1) {
+            for(int i = 0; i < n; i++) {
+                byte b = buffer[i];
+                if(quoted) {
+                    if(b == '"') {
+                        quoted = false;
+                        quoteInQuoted = true;
+                    } else {
+                        append(b);
+                    }
+                    continue;
+                }
+                if(quoteInQuoted) {
+                    quoteInQuoted = false;
+                    if(b == '"') {
+                        quoted = true;
+                        append(b);
+                        continue;
+                    }
+                }
+                switch(b) {
+                    case '"':
+                        if(!fieldStarted) {
+                            quoted = true;
+                            fieldStarted = true;
+                        } else {
+                            append(b);
+                        }
+                        break;
+                    case ',':
+                        endField();
+                        break;
+                    case '\n':
+                        endField();
+                        endRecord();
+                        break;
+                    case '\r':
+                        break;
+                    default:
+                        append(b);
+                }
+            }
+        }
+        if(column > 0 || fieldStarted) {
+            endField();
+            endRecord();
+        }
+    }
+
+    private boolean isKept() {
+        return !headerDone || column == keyColumn || column == nameColumn;
+    }
+
+    private void append(byte b) {
+        fieldStarted = true;
+        if(!isKept()) {
+            return;
+        }
+        if(fieldLength == field.length) {
+            field = Arrays.copyOf(field, field.length * 2);
+        }
+        field[fieldLength++] = b;
+    }
+
+    private void endField() {
+        if(isKept()) {
+            String value = new String(field, 0, fieldLength, StandardCharsets.UTF_8);
+            if(!headerDone) {
+                header.add(value);
+            } else if(column == keyColumn) {
+                key = value;
+            } else {
+                name = value;
+            }
+        }
+        fieldLength = 0;
+        fieldStarted = false;
+        column++;
+    }
+
+    private void endRecord() {
+        if(!headerDone) {
+            for(String keyName : KEY_COLUMNS) {
+                if(header.contains(keyName)) {
+                    keyColumn = header.indexOf(keyName);
+                }
+            }
+            if(header.contains(NAME_COLUMN)) {
+                nameColumn = header.indexOf(NAME_COLUMN);
+            }
+            headerDone = true;
+        } else if(key != null && name != null && !key.isEmpty()) {
+            if(size == srgNames.length) {
+                srgNames = Arrays.copyOf(srgNames, size * 2);
+                mcpNames = Arrays.copyOf(mcpNames, size * 2);
+            }
+            srgNames[size] = key;
+            mcpNames[size++] = name;
+        }
+        key = null;
+        name = null;
+        column = 0;
+    }
+}
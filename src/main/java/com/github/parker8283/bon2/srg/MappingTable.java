@@ -0,0 +1,322 @@
+package com.github.parker8283.bon2.srg;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+
+/**
+ * SRG name to MCP name lookup, keyed by the numeric id every SRG name carries ({@code func_12345_a}, {@code field_678_b}).<br/>
+ * A lookup is a prefix check, an allocation-free parse of the id and a probe of a primitive open-addressing map, so
+ * names that aren't SRG names are rejected without hashing anything. Methods and fields are numbered separately and get a
+ * map each; a hit is confirmed against the full SRG name. Names that don't follow the pattern fall back to a plain map.
+ * <p>
+ * Tables are only filled by {@link Repo} and {@link MappingCache} and never change once handed out, so they can be shared
+ * by any number of threads and runs. {@link #withLookupCounters} gives a run its own view that counts lookups.
+ */
+public class MappingTable {
+    private static final int NO_ENTRY = -1;
+    private static final int MAX_ID_DIGITS = 9;
+    private static final int METHOD_PREFIX = 5;
+
+    private final TIntIntHashMap methods;
+    private final TIntIntHashMap fields;
+    private final Map<String, String> irregular;
+    private final Map<String, String> params;
+    private String[] srgNames;
+    private String[] mcpNames;
+    private int size;
+    private volatile String fingerprint;
+
+    private final MappingTable source;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    MappingTable() {
+        methods = new TIntIntHashMap(16, 0.5f, 0, NO_ENTRY);
+        fields = new TIntIntHashMap(16, 0.5f, 0, NO_ENTRY);
+        irregular = Maps.newHashMap();
+        params = Maps.newHashMap();
+        srgNames = new String[64];
+        mcpNames = new String[64];
+        source = null;
+        hits = null;
+        misses = null;
+    }
+
+    private MappingTable(MappingTable source, LongAdder hits, LongAdder misses) {
+        methods = source.methods;
+        fields = source.fields;
+        irregular = source.irregular;
+        params = source.params;
+        srgNames = source.srgNames;
+        mcpNames = source.mcpNames;
+        size = source.size;
+        this.source = source;
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    /**
+     * @return A view of this table that shares its mappings and adds one to {@code hits} or {@code misses} for every
+     * lookup of a {@code func_}/{@code field_} name through {@link #get(String)}, {@link #remap(String)} or
+     * {@link #get(byte[], int, int)}. Other names are too common to count: every method and field name in a jar is looked
+     * up.
+     */
+    public MappingTable withLookupCounters(LongAdder hits, LongAdder misses) {
+        return new MappingTable(source != null ? source : this, hits, misses);
+    }
+
+    void put(String srgName, String mcpName) {
+        int prefix = getPrefixLength(srgName);
+        int id = prefix > 0 ? parseId(srgName, prefix) : NO_ENTRY;
+        if(id == NO_ENTRY) {
+            irregular.put(srgName, mcpName);
+            return;
+        }
+        put(prefix == METHOD_PREFIX, id, srgName, mcpName);
+    }
+
+    /**
+     * Adds a mapping whose kind and id have already been parsed out of {@code srgName}.
+     */
+    void put(boolean method, int id, String srgName, String mcpName) {
+        TIntIntHashMap ids = method ? methods : fields;
+        int index = ids.get(id);
+        if(index == NO_ENTRY) {
+            if(size == srgNames.length) {
+                srgNames = Arrays.copyOf(srgNames, size * 2);
+                mcpNames = Arrays.copyOf(mcpNames, size * 2);
+            }
+            srgNames[size] = srgName;
+            mcpNames[size] = mcpName;
+            ids.put(id, size++);
+        } else if(srgNames[index].equals(srgName)) {
+            mcpNames[index] = mcpName;
+        } else {
+            irregular.put(srgName, mcpName); // same id, different suffix
+        }
+    }
+
+    void putParam(String srgName, String mcpName) {
+        params.put(srgName, mcpName);
+    }
+
+    /**
+     * @return The MCP name, or null if {@code name} has no mapping.
+     */
+    public String get(String name) {
+        int prefix = getPrefixLength(name);
+        if(prefix == 0) {
+            return irregular.isEmpty() ? null : irregular.get(name);
+        }
+        int id = parseId(name, prefix);
+        if(id != NO_ENTRY) {
+            int index = (prefix == METHOD_PREFIX ? methods : fields).get(id);
+            if(index != NO_ENTRY && srgNames[index].equals(name)) {
+                return count(mcpNames[index]);
+            }
+        }
+        return count(irregular.isEmpty() ? null : irregular.get(name));
+    }
+
+    /**
+     * @return The MCP name, or {@code name} itself (the same instance) if it has no mapping.
+     */
+    public String remap(String name) {
+        String mapped = get(name);
+        return mapped != null ? mapped : name;
+    }
+
+    /**
+     * Same as {@link #get(String)}, for an ASCII name stored in {@code bytes}, such as a constant pool UTF8 entry.
+     * Nothing is allocated unless the name needs the fallback map.
+     */
+    public String get(byte[] bytes, int offset, int length) {
+        int prefix = getPrefixLength(bytes, offset, length);
+        if(prefix == 0) {
+            return irregular.isEmpty() ? null : irregular.get(new String(bytes, offset, length, StandardCharsets.ISO_8859_1));
+        }
+        int id = parseId(bytes, offset + prefix, offset + length);
+        if(id != NO_ENTRY) {
+            int index = (prefix == METHOD_PREFIX ? methods : fields).get(id);
+            if(index != NO_ENTRY && matches(srgNames[index], bytes, offset, length)) {
+                return count(mcpNames[index]);
+            }
+        }
+        return count(irregular.isEmpty() ? null : irregular.get(new String(bytes, offset, length, StandardCharsets.ISO_8859_1)));
+    }
+
+    private String count(String mapped) {
+        if(hits != null) {
+            (mapped != null ? hits : misses).increment();
+        }
+        return mapped;
+    }
+
+    /**
+     * @return The MCP name of a parameter such as {@code p_12345_1_}, or null if it has none. Parameter names come from
+     * {@code params.csv}, which not every mapping set has.
+     */
+    public String getParam(String name) {
+        return params.isEmpty() ? null : params.get(name);
+    }
+
+    /**
+     * @return The MCP name of the parameter, or {@code name} itself if it has none.
+     */
+    public String remapParam(String name) {
+        String mapped = getParam(name);
+        return mapped != null ? mapped : name;
+    }
+
+    /**
+     * Same as {@link #getParam(String)}, for an ASCII name stored in {@code bytes}. Only names starting with {@code p_}
+     * are decoded.
+     */
+    public String getParam(byte[] bytes, int offset, int length) {
+        if(params.isEmpty() || length < 3 || bytes[offset] != 'p' || bytes[offset + 1] != '_') {
+            return null;
+        }
+        return params.get(new String(bytes, offset, length, StandardCharsets.ISO_8859_1));
+    }
+
+    public boolean hasParams() {
+        return !params.isEmpty();
+    }
+
+    public int size() {
+        return size + irregular.size();
+    }
+
+    /**
+     * @return A hash of every mapping in the table, equal for tables with the same contents wherever they were read from.
+     * Computed once, on first use.
+     */
+    public String getFingerprint() {
+        if(source != null) {
+            return source.getFingerprint();
+        }
+        String result = fingerprint;
+        if(result == null) {
+            Hasher hasher = Hashing.murmur3_128().newHasher();
+            for(boolean method : new boolean[] {true, false}) {
+                for(int id : getSortedIds(method)) {
+                    hasher.putInt(id).putUnencodedChars(getSrgName(method, id)).putByte((byte)0).putUnencodedChars(getMcpName(method, id)).putByte((byte)0);
+                }
+                hasher.putByte((byte)1);
+            }
+            for(Map<String, String> names : Arrays.asList(irregular, params)) {
+                for(Map.Entry<String, String> entry : new TreeMap<>(names).entrySet()) {
+                    hasher.putUnencodedChars(entry.getKey()).putByte((byte)0).putUnencodedChars(entry.getValue()).putByte((byte)0);
+                }
+                hasher.putByte((byte)1);
+            }
+            fingerprint = result = hasher.hash().toString();
+        }
+        return result;
+    }
+
+    /**
+     * @return The ids of all regular method or field mappings, in ascending order.
+     */
+    int[] getSortedIds(boolean method) {
+        int[] ids = (method ? methods : fields).keys();
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    String getSrgName(boolean method, int id) {
+        return srgNames[(method ? methods : fields).get(id)];
+    }
+
+    String getMcpName(boolean method, int id) {
+        return mcpNames[(method ? methods : fields).get(id)];
+    }
+
+    /**
+     * @return Mappings whose SRG name doesn't follow the {@code func_<id>}/{@code field_<id>} pattern.
+     */
+    Map<String, String> getIrregular() {
+        return Collections.unmodifiableMap(irregular);
+    }
+
+    Map<String, String> getParams() {
+        return Collections.unmodifiableMap(params);
+    }
+
+    /**
+     * @return 5 for {@code func_}, 6 for {@code field_}, 0 otherwise.
+     */
+    private static int getPrefixLength(String name) {
+        int length = name.length();
+        if(length > 5 && name.charAt(0) == 'f') {
+            if(name.charAt(1) == 'u') {
+                return name.charAt(2) == 'n' && name.charAt(3) == 'c' && name.charAt(4) == '_' ? 5 : 0;
+            }
+            return length > 6 && name.charAt(1) == 'i' && name.charAt(2) == 'e' && name.charAt(3) == 'l' && name.charAt(4) == 'd' && name.charAt(5) == '_' ? 6 : 0;
+        }
+        return 0;
+    }
+
+    private static int getPrefixLength(byte[] bytes, int offset, int length) {
+        if(length > 5 && bytes[offset] == 'f') {
+            if(bytes[offset + 1] == 'u') {
+                return bytes[offset + 2] == 'n' && bytes[offset + 3] == 'c' && bytes[offset + 4] == '_' ? 5 : 0;
+            }
+            return length > 6 && bytes[offset + 1] == 'i' && bytes[offset + 2] == 'e' && bytes[offset + 3] == 'l' && bytes[offset + 4] == 'd' && bytes[offset + 5] == '_' ? 6 : 0;
+        }
+        return 0;
+    }
+
+    /**
+     * @return The digits after the prefix, up to the next underscore or the end, or {@link #NO_ENTRY} if there are none.
+     */
+    private static int parseId(String name, int start) {
+        int id = 0;
+        int end = Math.min(name.length(), start + MAX_ID_DIGITS);
+        int i = start;
+        for(; i < end; i++) {
+            char c = name.charAt(i);
+            if(c < '0' || c > '9') {
+                break;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return i == start || (i < name.length() && name.charAt(i) != '_') ? NO_ENTRY : id;
+    }
+
+    private static int parseId(byte[] bytes, int start, int limit) {
+        int id = 0;
+        int end = Math.min(limit, start + MAX_ID_DIGITS);
+        int i = start;
+        for(; i < end; i++) {
+            int c = bytes[i];
+            if(c < '0' || c > '9') {
+                break;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return i == start || (i < limit && bytes[i] != '_') ? NO_ENTRY : id;
+    }
+
+    private static boolean matches(String name, byte[] bytes, int offset, int length) {
+        if(name.length() != length) {
+            return false;
+        }
+        for(int i = 0; i < length; i++) {
+            if(name.charAt(i) != bytes[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
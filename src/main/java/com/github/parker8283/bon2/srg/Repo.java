@@ -2,32 +2,107 @@ package com.github.parker8283.bon2.srg;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import com.github.parker8283.bon2.data.IProgressListener;
-import com.google.common.base.Charsets;
-import com.google.common.collect.Maps;
-import com.google.common.io.Files;
+import com.github.parker8283.bon2.data.MappingVersion;
+import com.github.parker8283.bon2.util.ConcurrencyUtils;
+import com.github.parker8283.bon2.util.JfrEvents;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
 
 public class Repo {
+    public static final String FIELDS_CSV = "fields.csv";
+    public static final String METHODS_CSV = "methods.csv";
+    public static final String PARAMS_CSV = "params.csv";
 
-    public static final Map<String, Mapping> repo = Maps.newHashMap();
-    
-    public static void loadMappings(File srgsDir, IProgressListener progress) throws IOException {
-        loadMappings(new File(srgsDir, "fields.csv"), Mapping.Type.FIELD, progress);
-        loadMappings(new File(srgsDir, "methods.csv"), Mapping.Type.METHOD, progress);
+    /** How many mapping tables are kept for reuse by later runs. */
+    public static final int MAX_CACHED_TABLES = 4;
+
+    // Access-ordered, so the least recently used table is the one that goes
+    private static final Map<String, MappingTable> tables = new LinkedHashMap<String, MappingTable>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, MappingTable> eldest) {
+            return size() > MAX_CACHED_TABLES;
+        }
+    };
+
+    /**
+     * @return The mappings of {@code version}, reused from an earlier run for as long as its CSVs don't change.
+     */
+    public static MappingTable getMappings(MappingVersion version, IProgressListener progress) throws IOException {
+        String key = version.getVersion() + "|" + MappingCache.getFingerprint(version.getSrgs());
+        MappingTable table;
+        synchronized(tables) {
+            table = tables.get(key);
+        }
+        if(table != null) {
+            progress.start(1, "Reading in mappings: " + version + " (already loaded)");
+            progress.setProgress(1);
+            return table;
+        }
+        table = loadMappings(version.getSrgs(), progress);
+        synchronized(tables) {
+            tables.put(key, table);
+        }
+        return table;
     }
-    
-    private static void loadMappings(File csvFile, Mapping.Type type, IProgressListener progress) throws IOException {
-        List<String> lines = Files.readLines(csvFile, Charsets.UTF_8);
-        lines.remove(0); // header line
-        int linesRead = 0;
-        progress.start(lines.size(), "Reading in mappings: " + csvFile.getName());
-        for (String line : lines) {
-            String[] values = line.split(",");
-            repo.put(values[0], new Mapping(type, values[1], values[0]));
-            progress.setProgress(++linesRead);
+
+    /**
+     * Reads the mappings in {@code srgsDir}, from its {@link MappingCache} when that is still valid. Otherwise the CSVs,
+     * including {@code params.csv} if there is one, are parsed concurrently.
+     */
+    public static MappingTable loadMappings(File srgsDir, IProgressListener progress) throws IOException {
+        JfrEvents.Span phase = JfrEvents.beginPhase();
+        try {
+            return readMappings(srgsDir, progress);
+        } finally {
+            phase.commit("loadMappings", srgsDir.getPath());
+        }
+    }
+
+    private static MappingTable readMappings(File srgsDir, IProgressListener progress) throws IOException {
+        MappingTable table = MappingCache.load(srgsDir);
+        if(table != null) {
+            progress.start(1, "Reading in mappings: " + MappingCache.FILE_NAME);
+            progress.setProgress(1);
+            return table;
+        }
+        List<File> csvFiles = Lists.newArrayList(new File(srgsDir, FIELDS_CSV), new File(srgsDir, METHODS_CSV));
+        File params = new File(srgsDir, PARAMS_CSV);
+        if(params.isFile()) {
+            csvFiles.add(params);
+        }
+        progress.start(csvFiles.size(), "Reading in mappings: " + Joiner.on(", ").join(Lists.transform(csvFiles, File::getName)));
+        table = new MappingTable();
+        ExecutorService pool = ConcurrencyUtils.newWorkerPool(csvFiles.size(), "BON2 Mapping Reader");
+        try {
+            List<Future<MappingCsv>> results = Lists.newArrayList();
+            for(File csvFile : csvFiles) {
+                results.add(pool.submit(() -> MappingCsv.read(csvFile)));
+            }
+            for(int i = 0; i < results.size(); i++) {
+                MappingCsv csv = ConcurrencyUtils.await(results.get(i));
+                boolean isParams = csv.getFileName().equals(PARAMS_CSV);
+                for(int j = 0; j < csv.size(); j++) {
+                    if(isParams) {
+                        table.putParam(csv.getSrgName(j), csv.getMcpName(j));
+                    } else {
+                        table.put(csv.getSrgName(j), csv.getMcpName(j));
+                    }
+                }
+                progress.setProgress(i + 1);
+            }
+        } finally {
+            pool.shutdownNow();
         }
+        MappingCache.save(srgsDir, table);
+        return table;
     }
 }
@@ -26,6 +26,7 @@ import javax.swing.text.Document;
 import javax.swing.text.JTextComponent;
 
 import com.github.parker8283.bon2.data.BONFiles;
+import com.github.parker8283.bon2.data.MappingManager;
 import com.github.parker8283.bon2.data.MappingVersion;
 import com.github.parker8283.bon2.data.VersionLookup;
 import com.google.common.collect.Lists;
@@ -65,7 +66,33 @@ public class BONUtils {
         versions.sort(null);
         return versions;
     }
+
+    /**
+     * Looks {@code mappingsVer} up in the bundled/downloaded mappings first and the Gradle cache second.
+     * @return The mappings, or null if there are none for that version.
+     */
+    public static MappingVersion findMappings(String mappingsVer, MappingManager mappingManager) throws IOException {
+        File bundledDir = mappingManager.getMappingDir(mappingsVer);
+        if(bundledDir != null) {
+            return new MappingVersion(mappingsVer, bundledDir);
+        }
+        VersionLookup.INSTANCE.refresh();
+        for(MappingVersion m : buildValidMappings()) {
+            if(m.getVersion().contains(mappingsVer)) {
+                return m;
+            }
+        }
+        return null;
+    }
     
+    /**
+     * @return Where the remapped {@code input} goes if no output is given: next to it, with "-deobf" appended to the name.
+     */
+    public static File getDefaultOutput(File input) {
+        String name = input.getName();
+        return new File(input.getParentFile(), input.isDirectory() ? name + "-deobf" : name.replace(".jar", "-deobf.jar"));
+    }
+
     private static String getFullVersion(File mappingsfolder) {
         String version = VersionLookup.INSTANCE.getVersionFor(mappingsfolder.getName());
         String ret = mappingsfolder.getParentFile().getName().substring(4) + "_" + mappingsfolder.getName();
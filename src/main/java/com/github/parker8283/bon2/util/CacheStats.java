@@ -0,0 +1,137 @@
+package com.github.parker8283.bon2.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Hit and miss counters of a cache directory, summed over every run that used it.<br/>
+ * Kept in {@value #FILE_NAME} inside the directory and updated under a file lock, so concurrent runs don't lose counts.
+ */
+public class CacheStats {
+    public static final String FILE_NAME = "stats.properties";
+
+    private static final ConcurrentMap<String, Object> LOCKS = Maps.newConcurrentMap();
+
+    private final long hits;
+    private final long misses;
+    private final int entries;
+    private final long size;
+
+    private CacheStats(long hits, long misses, int entries, long size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.entries = entries;
+        this.size = size;
+    }
+
+    /**
+     * Adds one run's counts to the totals of {@code dir}. Failing to do so only makes the stats less accurate.<br/>
+     * Runs in this JVM take turns on a lock per directory before locking the file: a second {@link FileChannel#lock()}
+     * on the same file from the same JVM throws instead of waiting.
+     */
+    static void record(File dir, long hits, long misses) {
+        if(hits == 0 && misses == 0 || !dir.isDirectory() && !dir.mkdirs()) {
+            return;
+        }
+        try {
+            synchronized(getLock(dir)) {
+                try(FileChannel channel = FileChannel.open(new File(dir, FILE_NAME).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    channel.lock(); // released when the channel closes
+                    Properties counts = new Properties();
+                    InputStream in = Channels.newInputStream(channel);
+                    counts.load(in);
+                    counts.setProperty("hits", Long.toString(getCount(counts, "hits") + hits));
+                    counts.setProperty("misses", Long.toString(getCount(counts, "misses") + misses));
+                    channel.truncate(0);
+                    channel.position(0);
+                    OutputStream out = Channels.newOutputStream(channel);
+                    counts.store(out, "BON2 cache statistics");
+                    out.flush();
+                }
+            }
+        } catch(IOException | RuntimeException e) {
+            // stats are informational only
+        }
+    }
+
+    private static Object getLock(File dir) throws IOException {
+        return LOCKS.computeIfAbsent(dir.getCanonicalPath(), path -> new Object());
+    }
+
+    /**
+     * @param entryDepth 0 if the entries are files directly in {@code dir}, 1 if they are one level of directories down.
+     */
+    static CacheStats load(File dir, int entryDepth) {
+        Properties counts = new Properties();
+        File file = new File(dir, FILE_NAME);
+        if(file.isFile()) {
+            try(InputStream in = new FileInputStream(file)) {
+                counts.load(in);
+            } catch(IOException e) {
+                // report zero hits and misses
+            }
+        }
+        int[] entries = new int[1];
+        long[] size = new long[1];
+        countEntries(dir, entryDepth, entries, size);
+        return new CacheStats(getCount(counts, "hits"), getCount(counts, "misses"), entries[0], size[0]);
+    }
+
+    private static void countEntries(File dir, int depth, int[] entries, long[] size) {
+        File[] files = dir.listFiles();
+        if(files == null) {
+            return;
+        }
+        for(File file : files) {
+            if(file.isDirectory()) {
+                if(depth > 0) {
+                    countEntries(file, depth - 1, entries, size);
+                }
+            } else if(depth == 0 && !file.getName().equals(FILE_NAME) && !file.getName().endsWith(".tmp")) {
+                entries[0]++;
+                size[0] += file.length();
+            }
+        }
+    }
+
+    private static long getCount(Properties counts, String name) {
+        try {
+            return Long.parseLong(counts.getProperty(name, "0"));
+        } catch(NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public int getEntries() {
+        return entries;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return The share of lookups that were hits, from 0 to 1.
+     */
+    public double getHitRate() {
+        return hits + misses == 0 ? 0 : (double)hits / (hits + misses);
+    }
+}
@@ -0,0 +1,180 @@
+package com.github.parker8283.bon2.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.parker8283.bon2.BON2;
+import com.github.parker8283.bon2.data.RemapEngine;
+import com.github.parker8283.bon2.srg.MappingTable;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * On-disk store of remapped class files, keyed by a hash of the input class, the mapping table, the engine and the BON2
+ * version.<br/>
+ * A rebuilt mod usually changes only a few classes, so a repeated remap of it mostly hashes classes and reads the results
+ * of the last run instead of parsing and writing them again. Classes without any mapped name never get here, they are
+ * copied as they are anyway.
+ * <p>
+ * Every class is a file named after its key, in one of 256 subdirectories, written through a temporary file so that
+ * concurrent runs never see a partial one. A hit refreshes the file's modification time, and once the cache has grown
+ * past its size limit the least recently used files are deleted at the end of the run.
+ */
+public class ClassCache {
+    /** Bump whenever the remapped output of an engine changes, so old results are no longer found. */
+    private static final int FORMAT_VERSION = 1;
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private final File dir;
+    private final long maxSize;
+    private final byte[] salt;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /**
+     * @param maxSize How many bytes the cache may take up before old entries are evicted.
+     */
+    public ClassCache(File dir, long maxSize, MappingTable mappings, RemapEngine engine) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+        this.salt = (FORMAT_VERSION + "|" + BON2.VERSION + "|" + engine.name() + "|" + mappings.getFingerprint() + "|").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The key of a class file.
+     */
+    public HashCode getKey(byte[] classBytes) {
+        return HASH.newHasher(salt.length + classBytes.length).putBytes(salt).putBytes(classBytes).hash();
+    }
+
+    /**
+     * @return The remapped class stored under {@code key}, or null if there is none.
+     */
+    public byte[] get(HashCode key) {
+        File file = getFile(key);
+        try {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            file.setLastModified(System.currentTimeMillis());
+            hits.incrementAndGet();
+            return bytes;
+        } catch(IOException e) {
+            misses.incrementAndGet();
+            return null; // not cached yet, or evicted by another run meanwhile
+        }
+    }
+
+    /**
+     * Stores a remapped class. Failing to do so is not an error, the class is simply remapped again next time.
+     */
+    public void put(HashCode key, byte[] remapped) {
+        File file = getFile(key);
+        File temp = null;
+        try {
+            File parent = file.getParentFile();
+            if(!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+                return;
+            }
+            temp = File.createTempFile(file.getName(), ".tmp", parent);
+            Files.write(temp.toPath(), remapped);
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch(AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            bytesWritten.addAndGet(remapped.length);
+        } catch(IOException e) {
+            if(temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Wraps {@code transformer} so that classes are looked up here first, and remapped and stored on a miss.
+     */
+    public ClassTransformer wrap(ClassTransformer transformer) {
+        return (classFile, mappings) -> {
+            HashCode key = getKey(classFile.getBytes());
+            byte[] cached = get(key);
+            if(cached != null) {
+                return cached;
+            }
+            byte[] remapped = transformer.transform(classFile, mappings);
+            put(key, remapped);
+            return remapped;
+        };
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    public static CacheStats getStats(File dir) {
+        return CacheStats.load(dir, 1);
+    }
+
+    /**
+     * Ends a run: adds its hits and misses to the {@link CacheStats} and deletes the least recently used entries while the
+     * cache is bigger than its limit. Only looks at the files when this run added anything.
+     */
+    public void finish() {
+        CacheStats.record(dir, hits.get(), misses.get());
+        if(bytesWritten.get() == 0) {
+            return;
+        }
+        File[] buckets = dir.listFiles(File::isDirectory);
+        if(buckets == null) {
+            return;
+        }
+        List<File> files = Lists.newArrayList();
+        long size = 0;
+        for(File bucket : buckets) {
+            File[] entries = bucket.listFiles();
+            if(entries != null) {
+                for(File entry : entries) {
+                    files.add(entry);
+                    size += entry.length();
+                }
+            }
+        }
+        if(size <= maxSize) {
+            return;
+        }
+        long[] lastModified = new long[files.size()];
+        Integer[] order = new Integer[files.size()];
+        for(int i = 0; i < order.length; i++) {
+            lastModified[i] = files.get(i).lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong((Integer i) -> lastModified[i]));
+        long target = maxSize * 9 / 10; // some headroom, so the next run doesn't have to evict straight away
+        for(int i = 0; i < order.length && size > target; i++) {
+            File file = files.get(order[i]);
+            long length = file.length();
+            if(file.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private File getFile(HashCode key) {
+        String name = key.toString();
+        return new File(new File(dir, name.substring(0, 2)), name.substring(2));
+    }
+}
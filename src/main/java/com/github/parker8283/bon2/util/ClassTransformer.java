@@ -0,0 +1,16 @@
+package com.github.parker8283.bon2.util;
+
+import com.github.parker8283.bon2.srg.MappingTable;
+
+/**
+ * Remaps a single class file, for the engines that work on class bytes rather than ClassNodes.
+ */
+public interface ClassTransformer {
+
+    /**
+     * @param classFile The class to remap, with its constant pool already indexed.
+     * @param mappings The mappings to apply.
+     * @return The remapped class file.
+     */
+    byte[] transform(ConstantPoolScanner classFile, MappingTable mappings);
+}
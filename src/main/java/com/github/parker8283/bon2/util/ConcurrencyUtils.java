@@ -0,0 +1,58 @@
+package com.github.parker8283.bon2.util;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConcurrencyUtils {
+
+    /**
+     * Creates a fixed pool of daemon threads, so a stuck remap can never keep the JVM alive.
+     */
+    public static ExecutorService newWorkerPool(int threads, String name) {
+        return Executors.newFixedThreadPool(threads, daemonFactory(name));
+    }
+
+    /**
+     * Creates a pool of daemon threads that grows with demand and lets threads go after a minute idle, for work that
+     * mostly waits, such as HTTP exchanges.
+     */
+    public static ExecutorService newCachedPool(String name) {
+        return Executors.newCachedThreadPool(daemonFactory(name));
+    }
+
+    private static ThreadFactory daemonFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + " #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Waits for a worker result, unwrapping the exception the worker failed with.
+     */
+    public static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for worker", e);
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if(cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if(cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
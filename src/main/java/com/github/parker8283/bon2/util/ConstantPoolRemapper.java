@@ -0,0 +1,289 @@
+package com.github.parker8283.bon2.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.parker8283.bon2.srg.MappingTable;
+import com.google.common.collect.Lists;
+
+/**
+ * Remaps a class by rewriting CONSTANT_Utf8 entries in place, without ASM.<br/>
+ * SRG names are globally unique, so any UTF8 entry that is an SRG name can simply be replaced by its MCP name. Everything
+ * after the constant pool refers to it by index only and is copied verbatim: no ClassNode, no ClassWriter, no frames.
+ * <p>
+ * String literals are left alone, like the other engines do: when a renamed entry is also the value of a
+ * CONSTANT_String or of a string element of an annotation, which refers to the UTF8 entry directly, the literal gets a
+ * copy of the original text appended to the end of the pool.
+ */
+public class ConstantPoolRemapper {
+
+    public static byte[] remapClass(byte[] bytes, MappingTable mappings) {
+        return remapClass(new ConstantPoolScanner(bytes), mappings);
+    }
+
+    /**
+     * @return The remapped class, or the original bytes if nothing had to change.
+     */
+    public static byte[] remapClass(ConstantPoolScanner pool, MappingTable mappings) {
+        byte[] bytes = pool.getBytes();
+        int count = pool.getCount();
+        String[] replacements = null;
+        for(int i = 1; i < count; i++) {
+            if(pool.getTag(i) == ConstantPoolScanner.UTF8) {
+                String mapped = pool.getMappedName(i, mappings);
+                if(mapped != null) {
+                    if(replacements == null) {
+                        replacements = new String[count];
+                    }
+                    replacements[i] = mapped;
+                }
+            }
+        }
+        if(replacements == null) {
+            return bytes;
+        }
+
+        // Literals that share an entry with a renamed member keep their text through a new entry at the end of the pool
+        int[] literalIndex = null;
+        int[] literalSource = null;
+        int newCount = count;
+        List<Integer> annotationStrings = AnnotationScanner.findStringValues(pool);
+        int literals = count + annotationStrings.size();
+        for(int i = 1; i < literals; i++) {
+            if(i >= count || pool.getTag(i) == ConstantPoolScanner.STRING) {
+                int utf8 = pool.readUnsignedShort(i < count ? pool.getOffset(i) + 1 : annotationStrings.get(i - count));
+                if(replacements[utf8] != null) {
+                    if(literalIndex == null) {
+                        literalIndex = new int[count];
+                        literalSource = new int[count];
+                    }
+                    if(literalIndex[utf8] == 0) {
+                        literalSource[newCount - count] = utf8;
+                        literalIndex[utf8] = newCount++;
+                    }
+                }
+            }
+        }
+        if(newCount > 0xFFFF) {
+            throw new IllegalArgumentException("Constant pool too large to split string literals");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length + 256);
+        try {
+            DataOutputStream data = new DataOutputStream(out);
+            data.write(bytes, 0, 8); // magic and version
+            data.writeShort(newCount);
+            for(int i = 1; i < count; i++) {
+                int offset = pool.getOffset(i);
+                if(offset == 0) {
+                    continue;
+                }
+                int next = nextOffset(pool, i);
+                if(replacements[i] != null) {
+                    data.writeByte(ConstantPoolScanner.UTF8);
+                    data.writeUTF(replacements[i]);
+                } else if(literalIndex != null && pool.getTag(i) == ConstantPoolScanner.STRING && literalIndex[pool.readUnsignedShort(offset + 1)] != 0) {
+                    data.writeByte(ConstantPoolScanner.STRING);
+                    data.writeShort(literalIndex[pool.readUnsignedShort(offset + 1)]);
+                } else {
+                    data.write(bytes, offset, next - offset);
+                }
+            }
+            for(int i = 0; i < newCount - count; i++) {
+                int offset = pool.getOffset(literalSource[i]);
+                data.write(bytes, offset, nextOffset(pool, literalSource[i]) - offset);
+            }
+            byte[] rest = Arrays.copyOfRange(bytes, pool.getEnd(), bytes.length);
+            for(int offset : annotationStrings) {
+                int literal = literalIndex != null ? literalIndex[pool.readUnsignedShort(offset)] : 0;
+                if(literal != 0) {
+                    rest[offset - pool.getEnd()] = (byte)(literal >>> 8);
+                    rest[offset - pool.getEnd() + 1] = (byte)literal;
+                }
+            }
+            data.write(rest);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e); // can't happen on a ByteArrayOutputStream
+        }
+        return out.toByteArray();
+    }
+
+    private static int nextOffset(ConstantPoolScanner pool, int index) {
+        for(int i = index + 1; i < pool.getCount(); i++) {
+            if(pool.getOffset(i) != 0) {
+                return pool.getOffset(i);
+            }
+        }
+        return pool.getEnd();
+    }
+
+    /**
+     * Finds the string elements of the annotations in a class, whose values refer to a UTF8 entry without a
+     * CONSTANT_String in between. Classes whose pool names no annotation attribute aren't walked at all.
+     */
+    private static class AnnotationScanner {
+        private final ConstantPoolScanner pool;
+        private final byte[] bytes;
+        private final List<Integer> offsets = Lists.newArrayList();
+
+        private AnnotationScanner(ConstantPoolScanner pool) {
+            this.pool = pool;
+            this.bytes = pool.getBytes();
+        }
+
+        /**
+         * @return The offsets of the {@code const_value_index} of every string element value.
+         */
+        static List<Integer> findStringValues(ConstantPoolScanner pool) {
+            if(!hasAnnotations(pool)) {
+                return Collections.emptyList();
+            }
+            AnnotationScanner scanner = new AnnotationScanner(pool);
+            int offset = pool.getEnd() + 6;
+            offset += 2 + 2 * pool.readUnsignedShort(offset); // interfaces
+            for(int members = 0; members < 2; members++) { // fields, then methods
+                int count = pool.readUnsignedShort(offset);
+                offset += 2;
+                for(int i = 0; i < count; i++) {
+                    offset = scanner.attributes(offset + 6);
+                }
+            }
+            scanner.attributes(offset);
+            return scanner.offsets;
+        }
+
+        private static boolean hasAnnotations(ConstantPoolScanner pool) {
+            for(int i = 1; i < pool.getCount(); i++) {
+                if(pool.getTag(i) == ConstantPoolScanner.UTF8 && pool.readUnsignedShort(pool.getOffset(i) + 1) < 40) {
+                    String name = pool.getUtf8(i);
+                    if(name.endsWith("Annotations") || name.equals("AnnotationDefault")) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return The offset after the attribute table at {@code offset}.
+         */
+        private int attributes(int offset) {
+            int count = pool.readUnsignedShort(offset);
+            offset += 2;
+            for(int i = 0; i < count; i++) {
+                String name = pool.getUtf8(pool.readUnsignedShort(offset));
+                int start = offset + 6;
+                int end = start + pool.readInt(offset + 2);
+                switch(name) {
+                    case "RuntimeVisibleAnnotations":
+                    case "RuntimeInvisibleAnnotations":
+                        annotations(start, false);
+                        break;
+                    case "RuntimeVisibleTypeAnnotations":
+                    case "RuntimeInvisibleTypeAnnotations":
+                        annotations(start, true);
+                        break;
+                    case "RuntimeVisibleParameterAnnotations":
+                    case "RuntimeInvisibleParameterAnnotations":
+                        int parameters = bytes[start] & 0xFF;
+                        int parameterOffset = start + 1;
+                        for(int j = 0; j < parameters; j++) {
+                            parameterOffset = annotations(parameterOffset, false);
+                        }
+                        break;
+                    case "AnnotationDefault":
+                        elementValue(start);
+                        break;
+                    case "Code":
+                        int codeEnd = start + 8 + pool.readInt(start + 4);
+                        attributes(codeEnd + 2 + 8 * pool.readUnsignedShort(codeEnd)); // after the exception table
+                        break;
+                    case "Record":
+                        int components = pool.readUnsignedShort(start);
+                        int componentOffset = start + 2;
+                        for(int j = 0; j < components; j++) {
+                            componentOffset = attributes(componentOffset + 4);
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                offset = end;
+            }
+            return offset;
+        }
+
+        private int annotations(int offset, boolean typeAnnotations) {
+            int count = pool.readUnsignedShort(offset);
+            offset += 2;
+            for(int i = 0; i < count; i++) {
+                if(typeAnnotations) {
+                    offset = typePath(targetInfo(offset));
+                }
+                offset = annotation(offset);
+            }
+            return offset;
+        }
+
+        /**
+         * @return The offset after the target type and target info of a type annotation.
+         */
+        private int targetInfo(int offset) {
+            int targetType = bytes[offset] & 0xFF;
+            offset++;
+            switch(targetType) {
+                case 0x00: case 0x01: case 0x16:
+                    return offset + 1;
+                case 0x13: case 0x14: case 0x15:
+                    return offset;
+                case 0x40: case 0x41:
+                    return offset + 2 + 6 * pool.readUnsignedShort(offset);
+                case 0x47: case 0x48: case 0x49: case 0x4A: case 0x4B:
+                    return offset + 3;
+                default: // supertype, bounds, throws, catch and offsets
+                    return offset + 2;
+            }
+        }
+
+        private int typePath(int offset) {
+            return offset + 1 + 2 * (bytes[offset] & 0xFF);
+        }
+
+        private int annotation(int offset) {
+            int pairs = pool.readUnsignedShort(offset + 2);
+            offset += 4;
+            for(int i = 0; i < pairs; i++) {
+                offset = elementValue(offset + 2);
+            }
+            return offset;
+        }
+
+        private int elementValue(int offset) {
+            char tag = (char)bytes[offset];
+            offset++;
+            switch(tag) {
+                case 's':
+                    offsets.add(offset);
+                    return offset + 2;
+                case 'e':
+                    return offset + 4;
+                case '@':
+                    return annotation(offset);
+                case '[':
+                    int count = pool.readUnsignedShort(offset);
+                    offset += 2;
+                    for(int i = 0; i < count; i++) {
+                        offset = elementValue(offset);
+                    }
+                    return offset;
+                default: // other constants and classes
+                    return offset + 2;
+            }
+        }
+    }
+}
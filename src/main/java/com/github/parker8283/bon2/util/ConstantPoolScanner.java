@@ -0,0 +1,188 @@
+package com.github.parker8283.bon2.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import com.github.parker8283.bon2.srg.MappingTable;
+
+/**
+ * Indexes the constant pool of a class file without parsing anything else.<br/>
+ * Cheap enough to run on every class before deciding whether it's worth handing to ASM at all: a class with no
+ * SRG names in its constant pool can't contain anything to remap.
+ */
+public class ConstantPoolScanner {
+    public static final int UTF8 = 1;
+    public static final int INTEGER = 3;
+    public static final int FLOAT = 4;
+    public static final int LONG = 5;
+    public static final int DOUBLE = 6;
+    public static final int CLASS = 7;
+    public static final int STRING = 8;
+    public static final int FIELDREF = 9;
+    public static final int METHODREF = 10;
+    public static final int INTERFACE_METHODREF = 11;
+    public static final int NAME_AND_TYPE = 12;
+    public static final int METHOD_HANDLE = 15;
+    public static final int METHOD_TYPE = 16;
+    public static final int DYNAMIC = 17;
+    public static final int INVOKE_DYNAMIC = 18;
+    public static final int MODULE = 19;
+    public static final int PACKAGE = 20;
+
+    private final byte[] bytes;
+    private final int[] offsets;
+    private final int end;
+
+    /**
+     * @throws IllegalArgumentException if the bytes aren't a class file or the constant pool is malformed.
+     */
+    public ConstantPoolScanner(byte[] bytes) {
+        this.bytes = bytes;
+        if(bytes.length < 10 || readInt(0) != 0xCAFEBABE) {
+            throw new IllegalArgumentException("Not a class file");
+        }
+        int count = readUnsignedShort(8);
+        offsets = new int[count];
+        int pos = 10;
+        try {
+            for(int i = 1; i < count; i++) {
+                offsets[i] = pos;
+                int tag = bytes[pos];
+                switch(tag) {
+                    case UTF8:
+                        pos += 3 + readUnsignedShort(pos + 1);
+                        break;
+                    case INTEGER:
+                    case FLOAT:
+                    case FIELDREF:
+                    case METHODREF:
+                    case INTERFACE_METHODREF:
+                    case NAME_AND_TYPE:
+                    case DYNAMIC:
+                    case INVOKE_DYNAMIC:
+                        pos += 5;
+                        break;
+                    case LONG:
+                    case DOUBLE:
+                        pos += 9;
+                        i++; // takes up two slots
+                        break;
+                    case CLASS:
+                    case STRING:
+                    case METHOD_TYPE:
+                    case MODULE:
+                    case PACKAGE:
+                        pos += 3;
+                        break;
+                    case METHOD_HANDLE:
+                        pos += 4;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown constant pool tag " + tag + " at " + pos);
+                }
+            }
+        } catch(ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated constant pool", e);
+        }
+        if(pos + 6 > bytes.length) {
+            throw new IllegalArgumentException("Truncated class file");
+        }
+        end = pos;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return The constant pool count as stored in the class file, i.e. one more than the highest index.
+     */
+    public int getCount() {
+        return offsets.length;
+    }
+
+    /**
+     * @return Offset of the tag byte of entry {@code index}, or 0 for the unusable slot after a long or double.
+     */
+    public int getOffset(int index) {
+        return offsets[index];
+    }
+
+    public int getTag(int index) {
+        return offsets[index] == 0 ? 0 : bytes[offsets[index]];
+    }
+
+    /**
+     * @return Offset of the first byte after the constant pool (the access flags).
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    public String getClassName() {
+        int classIndex = readUnsignedShort(end + 2);
+        if(classIndex <= 0 || classIndex >= offsets.length || getTag(classIndex) != CLASS) {
+            throw new IllegalArgumentException("Invalid this_class index " + classIndex);
+        }
+        return getUtf8(readUnsignedShort(offsets[classIndex] + 1));
+    }
+
+    public String getUtf8(int index) {
+        if(getTag(index) != UTF8) {
+            throw new IllegalArgumentException("Constant " + index + " is not a UTF8 entry");
+        }
+        int offset = offsets[index];
+        try {
+            return new DataInputStream(new ByteArrayInputStream(bytes, offset + 1, 2 + readUnsignedShort(offset + 1))).readUTF();
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Whether any UTF8 entry is a name with a mapping. Nothing is decoded for the lookup.
+     */
+    public boolean hasMappedNames(MappingTable mappings) {
+        for(int i = 1; i < offsets.length; i++) {
+            if(getTag(i) == UTF8 && getMappedName(i, mappings) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether any UTF8 entry is a parameter name with a mapping, i.e. whether local variables or parameters need renaming.
+     */
+    public boolean hasMappedParams(MappingTable mappings) {
+        if(!mappings.hasParams()) {
+            return false;
+        }
+        for(int i = 1; i < offsets.length; i++) {
+            if(getTag(i) == UTF8 && mappings.getParam(bytes, offsets[i] + 3, readUnsignedShort(offsets[i] + 1)) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The MCP name for UTF8 entry {@code index}, or null if it isn't a mapped SRG member or parameter name.
+     */
+    public String getMappedName(int index, MappingTable mappings) {
+        int offset = offsets[index];
+        int length = readUnsignedShort(offset + 1);
+        String mapped = mappings.get(bytes, offset + 3, length);
+        return mapped != null ? mapped : mappings.getParam(bytes, offset + 3, length);
+    }
+
+    public int readUnsignedShort(int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+
+    public int readInt(int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16) | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+}
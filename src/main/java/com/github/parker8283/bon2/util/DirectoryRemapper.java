@@ -0,0 +1,99 @@
+package com.github.parker8283.bon2.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+import com.github.parker8283.bon2.data.IErrorHandler;
+import com.github.parker8283.bon2.data.IProgressListener;
+import com.github.parker8283.bon2.srg.MappingTable;
+
+/**
+ * Remaps an exploded jar, such as a build's class output directory, into another directory.<br/>
+ * Files are read, remapped and written on {@code threads} workers with plain NIO file operations, so there is no zip
+ * layer and nothing gets compressed. Classes go through the same checks and {@link ClassTransformer} as in
+ * {@link StreamingRemapper}, resources are copied, and the manifest and signature files are treated like in a jar.
+ * Jars in the directory are remapped like jars nested in a jar, see {@link NestedJarRemapper}.
+ * <p>
+ * Files already in the output directory are overwritten, but files that aren't in the input are left alone.
+ */
+public class DirectoryRemapper {
+
+    /**
+     * @param compressionLevel A {@link Deflater} level for the entries of remapped jars in the directory.
+     */
+    public static void remap(File input, File output, MappingTable mappings, ClassTransformer transformer, int threads, int compressionLevel, IErrorHandler errorHandler, IProgressListener progress) throws IOException {
+        Path inputRoot = input.toPath().toAbsolutePath().normalize();
+        Path outputRoot = output.toPath().toAbsolutePath().normalize();
+        if(outputRoot.startsWith(inputRoot) || inputRoot.startsWith(outputRoot)) {
+            throw new IOException("Input and output directories must not contain each other: " + input + ", " + output);
+        }
+        List<Path> files;
+        try(Stream<Path> paths = Files.walk(inputRoot)) {
+            files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        progress.start(files.size(), "Remapping directory");
+        AtomicInteger filesDone = new AtomicInteger();
+        ExecutorService pool = ConcurrencyUtils.newWorkerPool(threads, "BON2 Remapper");
+        try {
+            OrderedWorkQueue<JarUtils.LoadedEntry> queue = new OrderedWorkQueue<>(pool, threads * JarUtils.IN_FLIGHT_PER_THREAD, result -> {
+                if(result != null && result.nested != null) {
+                    result.nested.report(errorHandler);
+                }
+                if(result != null && result.error != null) {
+                    errorHandler.handleError(result.error, result.warning);
+                }
+                progress.setProgress(filesDone.incrementAndGet());
+            });
+            for(Path file : files) {
+                String name = inputRoot.relativize(file).toString().replace(File.separatorChar, '/');
+                if(!JarUtils.isCopiedResource(name) && !name.equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
+                    queue.add(null);
+                    continue;
+                }
+                Path target = outputRoot.resolve(inputRoot.relativize(file));
+                queue.submit(() -> remapFile(name, file, target, mappings, transformer, compressionLevel));
+            }
+            queue.finish();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return The outcome for a class or a jar, or null for another resource.
+     */
+    private static JarUtils.LoadedEntry remapFile(String name, Path file, Path target, MappingTable mappings, ClassTransformer transformer, int compressionLevel) throws IOException {
+        Files.createDirectories(target.getParent());
+        if(name.equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
+            Manifest manifest = new Manifest(new ByteArrayInputStream(Files.readAllBytes(file)));
+            Files.write(target, JarUtils.writeManifest(JarUtils.stripManifest(manifest)));
+            return null;
+        }
+        if(NestedJarRemapper.isNestedJar(name)) {
+            NestedJarRemapper.Result nested = NestedJarRemapper.remap(name, Files.readAllBytes(file), mappings, transformer, compressionLevel, 0, 1);
+            Files.write(target, nested.bytes);
+            return JarUtils.LoadedEntry.nested(nested);
+        }
+        if(!name.endsWith(".class")) {
+            Files.copy(file, target, StandardCopyOption.REPLACE_EXISTING);
+            return null;
+        }
+        JarUtils.LoadedEntry loaded = StreamingRemapper.remapClassEntry(name, Files.readAllBytes(file), mappings, transformer);
+        if(loaded.error == null) {
+            Files.write(target, loaded.bytes);
+        }
+        return loaded;
+    }
+}
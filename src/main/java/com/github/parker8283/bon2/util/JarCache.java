@@ -0,0 +1,143 @@
+package com.github.parker8283.bon2.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.github.parker8283.bon2.BON2;
+import com.github.parker8283.bon2.data.RemapOptions;
+import com.github.parker8283.bon2.srg.MappingTable;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+/**
+ * On-disk store of complete output jars, keyed by a hash of the input jar, the mapping table, the options that affect
+ * the output and the BON2 version.<br/>
+ * A rerun on an identical input just copies the stored jar. Only runs without any error or warning are stored, so a hit
+ * never hides a problem the original run would have reported. Entries are used and evicted like those of
+ * {@link ClassCache}: a hit refreshes the modification time, and the least recently used jars go once the cache is over
+ * its size limit.
+ * <p>
+ * The output is a copy rather than a hard link, so tools that rewrite the output in place can't corrupt the cache.
+ */
+public class JarCache {
+    /** Bump whenever the remapped output changes, so old results are no longer found. */
+    private static final int FORMAT_VERSION = 2;
+    private static final String EXTENSION = ".jar";
+
+    private final File dir;
+    private final long maxSize;
+
+    /**
+     * @param maxSize How many bytes the cache may take up before old entries are evicted.
+     */
+    public JarCache(File dir, long maxSize) {
+        this.dir = dir;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return The key of remapping {@code input} with these mappings and options. Reads the whole jar.
+     */
+    public HashCode getKey(File input, MappingTable mappings, RemapOptions options) throws IOException {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putString(FORMAT_VERSION + "|" + BON2.VERSION + "|" + options.getEngine().name() + "|" + options.getCompressionLevel() + "|" + mappings.getFingerprint() + "|", StandardCharsets.UTF_8);
+        byte[] buffer = new byte[64 * 1024];
+        try(InputStream in = new FileInputStream(input)) {
+            int n;
+            while((n = in.read(buffer)) != -1) {
+                hasher.putBytes(buffer, 0, n);
+            }
+        }
+        return hasher.hash();
+    }
+
+    /**
+     * Copies the jar stored under {@code key} to {@code output}.
+     * @return Whether there was one.
+     */
+    public boolean fetch(HashCode key, File output) {
+        File entry = getFile(key);
+        boolean hit = false;
+        if(entry.isFile()) {
+            try {
+                Files.copy(entry.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                entry.setLastModified(System.currentTimeMillis());
+                hit = true;
+            } catch(IOException e) {
+                // evicted meanwhile, or the output can't be written: remap as usual
+            }
+        }
+        CacheStats.record(dir, hit ? 1 : 0, hit ? 0 : 1);
+        return hit;
+    }
+
+    /**
+     * Stores {@code output} under {@code key} and evicts old entries if the cache has grown too big. Failing to store is
+     * not an error, the jar is simply remapped again next time.
+     */
+    public void store(HashCode key, File output) {
+        File entry = getFile(key);
+        File temp = null;
+        try {
+            if(!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+                return;
+            }
+            temp = File.createTempFile(entry.getName(), ".tmp", dir);
+            Files.copy(output.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            try {
+                Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch(AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch(IOException e) {
+            if(temp != null) {
+                temp.delete();
+            }
+            return;
+        }
+        evict();
+    }
+
+    public static CacheStats getStats(File dir) {
+        return CacheStats.load(dir, 0);
+    }
+
+    private void evict() {
+        File[] entries = dir.listFiles((file, name) -> name.endsWith(EXTENSION));
+        if(entries == null) {
+            return;
+        }
+        long size = 0;
+        long[] lastModified = new long[entries.length];
+        Integer[] order = new Integer[entries.length];
+        for(int i = 0; i < entries.length; i++) {
+            size += entries[i].length();
+            lastModified[i] = entries[i].lastModified();
+            order[i] = i;
+        }
+        if(size <= maxSize) {
+            return;
+        }
+        Arrays.sort(order, Comparator.comparingLong((Integer i) -> lastModified[i]));
+        long target = maxSize * 9 / 10;
+        for(int i = 0; i < order.length && size > target; i++) {
+            long length = entries[order[i]].length();
+            if(entries[order[i]].delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    private File getFile(HashCode key) {
+        return new File(dir, key + EXTENSION);
+    }
+}
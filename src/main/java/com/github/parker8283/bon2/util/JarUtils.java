@@ -1,5 +1,7 @@
 package com.github.parker8283.bon2.util;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -7,21 +9,180 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.*;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
 
 import org.objectweb.asm.tree.ClassNode;
 
 import com.github.parker8283.bon2.data.IErrorHandler;
 import com.github.parker8283.bon2.data.IProgressListener;
+import com.github.parker8283.bon2.data.RemapOptions;
 import com.github.parker8283.bon2.io.FixedJarInputStream;
+import com.github.parker8283.bon2.io.ZipArchive;
+import com.github.parker8283.bon2.io.ZipArchiveWriter;
 import com.github.parker8283.bon2.srg.ClassCollection;
+import com.github.parker8283.bon2.srg.MappingTable;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
 
 public class JarUtils {
+    static final int IN_FLIGHT_PER_THREAD = 4;
+    /** Rough heap a class takes up while it is remapped per byte of class file: the input, the parsed or rewritten form, and the output. */
+    static final int HEAP_PER_CLASS_BYTE = 4;
 
     public static ClassCollection readFromJar(File file, IErrorHandler errorHandler, IProgressListener progress) throws IOException {
+        return readFromJar(file, RemapOptions.DEFAULT_THREADS, null, errorHandler, progress);
+    }
+
+    public static ClassCollection readFromJar(File file, int threads, MappingTable mappings, IErrorHandler errorHandler, IProgressListener progress) throws IOException {
+        return readFromJar(file, threads, mappings, null, errorHandler, progress);
+    }
+
+    /**
+     * Reads a jar through its central directory, inflating and parsing entries on {@code threads} workers.
+     * Classes keep the order they have in the archive. Resources aren't inflated at all: they are kept as raw entries
+     * of the still open archive, so the returned collection must be closed once it has been written. Nested jars are
+     * remapped right away when {@code mappings} is given, see {@link NestedJarRemapper}, and end up with the resources.
+     * @param mappings If not null, classes without any name from these mappings are kept as raw entries as well.
+     * @param cache If not null, classes found in it are kept as the already remapped bytes instead of being parsed.
+     */
+    public static ClassCollection readFromJar(File file, int threads, MappingTable mappings, ClassCache cache, IErrorHandler errorHandler, IProgressListener progress) throws IOException {
+        return readFromJar(file, threads, mappings, cache, Deflater.DEFAULT_COMPRESSION, errorHandler, progress);
+    }
+
+    /**
+     * Same as {@link #readFromJar(File, int, MappingTable, ClassCache, IErrorHandler, IProgressListener)}, compressing
+     * the entries of remapped nested jars at {@code compressionLevel}, which should be the one the output is written with.
+     */
+    public static ClassCollection readFromJar(File file, int threads, MappingTable mappings, ClassCache cache, int compressionLevel, IErrorHandler errorHandler, IProgressListener progress) throws IOException {
+        JfrEvents.Span phase = JfrEvents.beginPhase();
+        try {
+            return readFromArchive(file, threads, mappings, cache, compressionLevel, errorHandler, progress);
+        } finally {
+            phase.commit("read", file.getName());
+        }
+    }
+
+    private static ClassCollection readFromArchive(File file, int threads, MappingTable mappings, ClassCache cache, int compressionLevel, IErrorHandler errorHandler, IProgressListener progress) throws IOException {
+        ZipArchive zip;
+        try {
+            zip = new ZipArchive(file);
+        } catch(ZipException e) {
+            return readFromJarStream(file, errorHandler, progress);
+        }
+        List<ClassNode> classes = Lists.newArrayList();
+        Map<String, byte[]> extraFiles = Maps.newLinkedHashMap();
+        List<ZipArchive.Entry> rawFiles = Lists.newArrayList();
+        Map<String, HashCode> cacheKeys = Maps.newHashMap();
+        long fileSize = file.length();
+        long currentProgress = 0;
+        progress.start((int)fileSize, "Loading Input JAR");
+        ExecutorService pool = ConcurrencyUtils.newWorkerPool(threads, "BON2 Jar Reader");
+        boolean success = false;
+        try {
+            List<ZipArchive.Entry> entries = Lists.newArrayList();
+            List<Future<LoadedEntry>> results = Lists.newArrayList();
+            for(ZipArchive.Entry entry : zip.getEntries()) {
+                String name = entry.getName();
+                if(entry.isDirectory()) {
+                    continue;
+                }
+                if(name.endsWith(".class")) {
+                    entries.add(entry);
+                    results.add(pool.submit(() -> loadEntry(zip, entry, mappings, cache)));
+                } else if(isCopiedResource(name)) {
+                    if(mappings != null && NestedJarRemapper.isNestedJar(name)) {
+                        ClassTransformer transformer = cache != null ? cache.wrap(Remapper::remapClass) : Remapper::remapClass;
+                        entries.add(entry);
+                        results.add(pool.submit(() -> LoadedEntry.nested(NestedJarRemapper.remap(name, zip.read(entry), mappings, transformer, compressionLevel, 0, 1))));
+                    } else if(ZipArchive.canCopyRaw(entry)) {
+                        rawFiles.add(entry);
+                    } else {
+                        entries.add(entry);
+                        results.add(pool.submit(() -> loadEntry(zip, entry, null, null)));
+                    }
+                }
+            }
+            for(int i = 0; i < entries.size(); i++) {
+                LoadedEntry loaded = ConcurrencyUtils.await(results.get(i));
+                if(loaded.nested != null) {
+                    loaded.nested.report(errorHandler);
+                }
+                if(loaded.error != null) {
+                    errorHandler.handleError(loaded.error, loaded.warning);
+                } else if(loaded.unmapped && ZipArchive.canCopyRaw(entries.get(i))) {
+                    rawFiles.add(entries.get(i)); // Nothing to remap, so the class is copied as it is stored
+                } else if(loaded.classNode != null) {
+                    classes.add(loaded.classNode);
+                    if(loaded.cacheKey != null) {
+                        cacheKeys.put(loaded.classNode.name, loaded.cacheKey);
+                    }
+                } else {
+                    extraFiles.put(entries.get(i).getName(), loaded.bytes);
+                }
+                progress.setProgress((int)(currentProgress += entries.get(i).getCompressedSize()));
+            }
+            Manifest manifest = stripManifest(zip.getManifest());
+            progress.setProgress((int)fileSize);
+            success = true;
+            return new ClassCollection(classes, manifest, extraFiles, zip, rawFiles, cacheKeys);
+        } finally {
+            pool.shutdownNow();
+            if(!success) {
+                zip.close();
+            }
+        }
+    }
+
+    private static LoadedEntry loadEntry(ZipArchive zip, ZipArchive.Entry entry, MappingTable mappings, ClassCache cache) throws IOException {
+        String name = entry.getName();
+        byte[] bytes = zip.read(entry);
+        if(!name.endsWith(".class")) {
+            return new LoadedEntry(bytes, null, null, false);
+        }
+        if(bytes.length == 0) {
+            return new LoadedEntry(null, null, "Found a class with no content. Corrupted JAR maybe?\nClass was:" + name + "\nThe class will be skipped.", true);
+        }
+        JfrEvents.Span event = JfrEvents.beginClass();
+        try {
+            LoadedEntry loaded = loadClass(name, bytes, mappings, cache);
+            event.commit("read", name.substring(0, name.length() - ".class".length()), (long)bytes.length);
+            return loaded;
+        } catch(Exception e) {
+            return new LoadedEntry(null, null, "There was an unexpected error while reading class data. Corrupted JAR maybe?\n" + name, false);
+        }
+    }
+
+    private static LoadedEntry loadClass(String name, byte[] bytes, MappingTable mappings, ClassCache cache) {
+        ConstantPoolScanner scanner = new ConstantPoolScanner(bytes);
+        String className = scanner.getClassName();
+        if(!name.equals(className + ".class")) {
+            return new LoadedEntry(null, null, "There was an error in reading a class. Corrupted JAR maybe?\n" + name + " != " + className + ".class", false);
+        }
+        if(mappings != null && !scanner.hasMappedNames(mappings)) {
+            return LoadedEntry.unmapped(bytes);
+        }
+        if(cache != null) {
+            HashCode key = cache.getKey(bytes);
+            byte[] remapped = cache.get(key);
+            if(remapped != null) {
+                return new LoadedEntry(remapped, null, null, false); // written like a resource, the remapper never sees it
+            }
+            return new LoadedEntry(null, IOUtils.readClassFromBytes(bytes), null, false, false, key);
+        }
+        return new LoadedEntry(null, IOUtils.readClassFromBytes(bytes), null, false);
+    }
+
+    /**
+     * Sequential fallback for archives whose central directory {@link ZipArchive} can't make sense of.
+     */
+    private static ClassCollection readFromJarStream(File file, IErrorHandler errorHandler, IProgressListener progress) throws IOException {
         List<ClassNode> classes = Lists.newArrayList();
         Map<String, byte[]> extraFiles = Maps.newHashMap();
         Manifest manifest = null;
@@ -55,16 +216,14 @@ public class JarUtils {
                     } else {
                         errorHandler.handleError("Found a class with no content. Corrupted JAR maybe?\nClass was:" + name + "\nThe class will be skipped.", true);
                     }
-                } else {
-                    String upperCaseName = name.toUpperCase(Locale.ROOT);
-                    // Skip MANIFEST, since it's handled specially, and any signature files as they will be invalid after modifying binaries
-                    if (!upperCaseName.startsWith("META-INF/") || (!upperCaseName.endsWith("MANIFEST.MF") && !upperCaseName.endsWith(".SF") && !upperCaseName.endsWith(".RSA"))) {
-                        extraFiles.put(name, IOUtils.readStreamFully(jin));
-                    }
+                } else if (isCopiedResource(name)) {
+                    extraFiles.put(name, IOUtils.readStreamFully(jin));
+                } else if(manifest == null && name.equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
+                    manifest = new Manifest(jin); // the stream only finds it on its own when it comes first
                 }
                 progress.setProgress((int)(currentProgress += entry.getCompressedSize()));
             }
-            manifest = stripManifest(jin.getManifest());
+            manifest = stripManifest(jin.getManifest() != null ? jin.getManifest() : manifest);
             progress.setProgress((int)fileSize);
         } finally {
             if(jin != null) {
@@ -75,67 +234,115 @@ public class JarUtils {
     }
 
     public static void writeToJar(ClassCollection cc, File file, IProgressListener progress) throws IOException {
+        writeToJar(cc, file, RemapOptions.DEFAULT_THREADS, Deflater.DEFAULT_COMPRESSION, progress);
+    }
+
+    public static void writeToJar(ClassCollection cc, File file, int threads, int compressionLevel, IProgressListener progress) throws IOException {
+        writeToJar(cc, file, threads, compressionLevel, null, progress);
+    }
+
+    /**
+     * Serializes and compresses entries on {@code threads} workers, then appends them to the jar in order.
+     * @param compressionLevel A {@link Deflater} level, or {@link ZipArchiveWriter#STORED} to skip compression.
+     * @param cache If not null, the classes listed in {@link ClassCollection#getCacheKeys()} are stored in it.
+     */
+    public static void writeToJar(ClassCollection cc, File file, int threads, int compressionLevel, ClassCache cache, IProgressListener progress) throws IOException {
+        JfrEvents.Span phase = JfrEvents.beginPhase();
+        try {
+            writeToArchive(cc, file, threads, compressionLevel, cache, progress);
+        } finally {
+            phase.commit("write", file.getName());
+        }
+    }
+
+    private static void writeToArchive(ClassCollection cc, File file, int threads, int compressionLevel, ClassCache cache, IProgressListener progress) throws IOException {
         if(file.exists()) {
             file.delete();
         }
-        int classesWritten = 0;
+        AtomicInteger entriesWritten = new AtomicInteger();
         Set<String> dirs = Sets.newHashSet();
         Set<String> writtenEntries = Sets.newHashSet(); // Track written entries to prevent duplicates
-        JarOutputStream jout = null;
-        progress.start(cc.getClasses().size() + cc.getExtraFiles().size() + 1, "Writing remapped JAR");
-        try {
-            jout = new JarOutputStream(new FileOutputStream(file));
+        progress.start(cc.getClasses().size() + cc.getExtraFiles().size() + cc.getRawFiles().size() + 1, "Writing remapped JAR");
+        ExecutorService pool = ConcurrencyUtils.newWorkerPool(threads, "BON2 Jar Writer");
+        try(ZipArchiveWriter zout = new ZipArchiveWriter(new BufferedOutputStream(new FileOutputStream(file)))) {
+            OrderedWorkQueue<ZipArchiveWriter.Record> queue = new OrderedWorkQueue<>(pool, threads * IN_FLIGHT_PER_THREAD, record -> {
+                zout.write(record);
+                progress.setProgress(entriesWritten.incrementAndGet());
+            });
             addDirectories(JarFile.MANIFEST_NAME, dirs);
-            jout.putNextEntry(new JarEntry(JarFile.MANIFEST_NAME));
             writtenEntries.add(JarFile.MANIFEST_NAME);
-            Manifest manifest = cc.getManifest();
-            if (manifest != null) {
-                manifest.write(jout);
-            }
-            jout.closeEntry();
-            progress.setProgress(++classesWritten);
+            byte[] manifest = writeManifest(cc.getManifest());
+            queue.submit(() -> ZipArchiveWriter.compress(JarFile.MANIFEST_NAME, manifest, compressionLevel));
             for(ClassNode classNode : cc.getClasses()) {
                 String entryName = classNode.name + ".class";
-                if (writtenEntries.contains(entryName)) {
+                if (!writtenEntries.add(entryName)) {
                     continue; // Skip duplicate class entries
                 }
-                writtenEntries.add(entryName);
                 addDirectories(classNode.name, dirs);
-                jout.putNextEntry(new JarEntry(entryName));
-                jout.write(IOUtils.writeClassToBytes(classNode));
-                jout.closeEntry();
-                progress.setProgress(++classesWritten);
+                HashCode cacheKey = cache != null ? cc.getCacheKeys().get(classNode.name) : null;
+                queue.submit(() -> {
+                    JfrEvents.Span event = JfrEvents.beginClass();
+                    byte[] bytes = IOUtils.writeClassToBytes(classNode);
+                    if(cacheKey != null) {
+                        cache.put(cacheKey, bytes);
+                    }
+                    ZipArchiveWriter.Record record = ZipArchiveWriter.compress(entryName, bytes, compressionLevel);
+                    event.commit("write", classNode.name, (long)bytes.length);
+                    return record;
+                });
             }
             for(Map.Entry<String, byte[]> entry : cc.getExtraFiles().entrySet()) {
                 String entryName = entry.getKey();
-                if (writtenEntries.contains(entryName)) {
+                if (!writtenEntries.add(entryName)) {
                     continue; // Skip duplicate entries
                 }
-                writtenEntries.add(entryName);
-                addDirectories(entry.getKey(), dirs);
-                jout.putNextEntry(new JarEntry(entry.getKey()));
-                jout.write(entry.getValue());
-                jout.closeEntry();
-                progress.setProgress(++classesWritten);
+                addDirectories(entryName, dirs);
+                queue.submit(() -> ZipArchiveWriter.compress(entryName, entry.getValue(), compressionLevel));
+            }
+            queue.finish();
+            for(ZipArchive.Entry entry : cc.getRawFiles()) {
+                if (!writtenEntries.add(entry.getName())) {
+                    continue;
+                }
+                addDirectories(entry.getName(), dirs);
+                zout.writeRaw(cc.getSource(), entry);
+                progress.setProgress(entriesWritten.incrementAndGet());
             }
             for(String dirPath : dirs) {
                 String dirEntryName = dirPath + "/";
-                if (writtenEntries.contains(dirEntryName)) {
-                    continue; // Skip duplicate directory entries
+                if (writtenEntries.add(dirEntryName)) { // Skip duplicate directory entries
+                    zout.writeDirectory(dirEntryName);
                 }
-                writtenEntries.add(dirEntryName);
-                jout.putNextEntry(new JarEntry(dirEntryName));
-                jout.closeEntry();
             }
-            jout.flush();
         } finally {
-            if(jout != null) {
-                jout.close();
-            }
+            pool.shutdownNow();
+        }
+    }
+
+    static byte[] writeManifest(Manifest manifest) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (manifest != null) {
+            manifest.write(bytes);
         }
+        return bytes.toByteArray();
     }
 
-    private static void addDirectories(String filePath, Set<String> dirs) {
+    /**
+     * @return About how many bytes of heap remapping an entry of {@code size} bytes takes, for a {@link MemoryBudget}.
+     */
+    static long estimateHeapUse(long size) {
+        return size * HEAP_PER_CLASS_BYTE + 1024;
+    }
+
+    /**
+     * Skips MANIFEST, since it's handled specially, and any signature files as they will be invalid after modifying binaries.
+     */
+    static boolean isCopiedResource(String name) {
+        String upperCaseName = name.toUpperCase(Locale.ROOT);
+        return !upperCaseName.startsWith("META-INF/") || (!upperCaseName.endsWith("MANIFEST.MF") && !upperCaseName.endsWith(".SF") && !upperCaseName.endsWith(".RSA"));
+    }
+
+    static void addDirectories(String filePath, Set<String> dirs) {
         int i = filePath.lastIndexOf('/');
         if(i >= 0) {
             String dirPath = filePath.substring(0, i);
@@ -145,7 +352,7 @@ public class JarUtils {
         }
     }
 
-    private static Manifest stripManifest(Manifest manifestIn) {
+    static Manifest stripManifest(Manifest manifestIn) {
         if (manifestIn == null) {
             return manifestIn;
         }
@@ -155,4 +362,49 @@ public class JarUtils {
         }
         return manifestOut;
     }
+
+    /**
+     * Outcome of reading one entry on a worker; errors are reported on the calling thread, in archive order.
+     */
+    static class LoadedEntry {
+        final byte[] bytes;
+        final ClassNode classNode;
+        final String error;
+        final boolean warning;
+        /** A class without any mapped names in its constant pool, so its bytes can be written unchanged. */
+        final boolean unmapped;
+        /** Where the class goes in the {@link ClassCache} once it has been remapped. */
+        final HashCode cacheKey;
+        /** The outcome of remapping a nested jar, whose errors still have to be reported. */
+        final NestedJarRemapper.Result nested;
+
+        LoadedEntry(byte[] bytes, ClassNode classNode, String error, boolean warning) {
+            this(bytes, classNode, error, warning, false, null);
+        }
+
+        private LoadedEntry(byte[] bytes, ClassNode classNode, String error, boolean warning, boolean unmapped, HashCode cacheKey) {
+            this(bytes, classNode, error, warning, unmapped, cacheKey, null);
+        }
+
+        private LoadedEntry(byte[] bytes, ClassNode classNode, String error, boolean warning, boolean unmapped, HashCode cacheKey, NestedJarRemapper.Result nested) {
+            this.bytes = bytes;
+            this.classNode = classNode;
+            this.error = error;
+            this.warning = warning;
+            this.unmapped = unmapped;
+            this.cacheKey = cacheKey;
+            this.nested = nested;
+        }
+
+        static LoadedEntry unmapped(byte[] bytes) {
+            return new LoadedEntry(bytes, null, null, false, true, null);
+        }
+
+        /**
+         * A nested jar, which counts as unmapped if nothing in it changed.
+         */
+        static LoadedEntry nested(NestedJarRemapper.Result nested) {
+            return new LoadedEntry(nested.bytes, null, null, false, !nested.changed, null, nested);
+        }
+    }
 }
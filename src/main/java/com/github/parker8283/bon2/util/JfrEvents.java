@@ -0,0 +1,310 @@
+package com.github.parker8283.bon2.util;
+
+import java.io.File;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Java Flight Recorder events for the phases of a remap, each remapped jar, and classes that take long to read, remap or
+ * write, so GC pauses and I/O stalls in a recording can be matched to what BON2 was doing at the time.<br/>
+ * BON2 still runs on Java 8, which has no {@code jdk.jfr} API, so the event types are created at runtime through
+ * {@code jdk.jfr.EventFactory} by reflection. Without it every method here does nothing.
+ * <p>
+ * The event types are only registered once something has started the flight recorder, {@code --profile},
+ * {@code -XX:StartFlightRecording} or {@code jcmd JFR.start}. Events are only created while a recording has them enabled,
+ * and class events are only committed above their threshold ({@value #DEFAULT_CLASS_THRESHOLD_MILLIS} ms unless the
+ * recording says otherwise), so a JVM without a recording pays one check per class.
+ */
+public class JfrEvents {
+    public static final String PHASE_EVENT = "bon2.Phase";
+    public static final String JAR_EVENT = "bon2.Jar";
+    public static final String CLASS_EVENT = "bon2.Class";
+    public static final long DEFAULT_CLASS_THRESHOLD_MILLIS = 10;
+
+    private static final Span NONE = new Span(null, null);
+    private static final Method IS_INITIALIZED = findIsInitialized();
+    private static volatile Types types;
+
+    /**
+     * @return Whether this JVM has the {@code jdk.jfr} API, e.g. not on Java 8.
+     */
+    public static boolean isAvailable() {
+        return IS_INITIALIZED != null;
+    }
+
+    /**
+     * Starts a phase, committed with {@code (phase, jar)}.
+     */
+    public static Span beginPhase() {
+        return begin(Types.PHASE);
+    }
+
+    /**
+     * Starts a jar, committed with {@code (input, output, engine, status, classes, resources, bytesIn, bytesOut,
+     * mappingHits, mappingMisses)}.
+     */
+    public static Span beginJar() {
+        return begin(Types.JAR);
+    }
+
+    /**
+     * Starts a class, committed with {@code (operation, className, size)}. The size is in bytes of class file, or -1
+     * where the class only exists as a ClassNode.
+     */
+    public static Span beginClass() {
+        return begin(Types.CLASS);
+    }
+
+    /**
+     * @return {@code transformer}, committing a class event for every class it takes too long on.
+     */
+    public static ClassTransformer wrap(String operation, ClassTransformer transformer) {
+        if(!isAvailable()) {
+            return transformer;
+        }
+        return (classFile, mappings) -> {
+            Span span = beginClass();
+            byte[] remapped = transformer.transform(classFile, mappings);
+            if(span != NONE) {
+                span.commit(operation, classFile.getClassName(), (long)classFile.getBytes().length);
+            }
+            return remapped;
+        };
+    }
+
+    /**
+     * @return The event types, or null until something has started the flight recorder. Making them initializes
+     * JFR, which takes a few hundred milliseconds that a run without a recording shouldn't pay.
+     */
+    private static Types getTypes() {
+        Types result = types;
+        if(result == null && IS_INITIALIZED != null) {
+            try {
+                if((Boolean)IS_INITIALIZED.invoke(null)) {
+                    result = createTypes();
+                }
+            } catch(ReflectiveOperationException e) {
+                // not recording
+            }
+        }
+        return result;
+    }
+
+    private static synchronized Types createTypes() {
+        if(types == null) {
+            try {
+                types = new Types();
+            } catch(ReflectiveOperationException | LinkageError | RuntimeException e) {
+                return null; // a stripped down runtime, record nothing
+            }
+        }
+        return types;
+    }
+
+    private static Span begin(int type) {
+        Types current = getTypes();
+        if(current == null || !current.types[type].isEnabled()) {
+            return NONE;
+        }
+        return current.types[type].begin();
+    }
+
+    private static Method findIsInitialized() {
+        try {
+            return Class.forName("jdk.jfr.FlightRecorder").getMethod("isInitialized");
+        } catch(ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts a recording of the JVM's {@code profile} settings plus every BON2 event, written to {@code destination}
+     * when the JVM exits.
+     * @param classThresholdMillis How long a class must take for its event to be recorded.
+     * @return False if this JVM can't record, e.g. on Java 8.
+     */
+    public static boolean startRecording(File destination, long classThresholdMillis) {
+        if(!isAvailable() || createTypes() == null) {
+            return false;
+        }
+        try {
+            Class<?> configurationClass = Class.forName("jdk.jfr.Configuration");
+            Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+            Object configuration = configurationClass.getMethod("getConfiguration", String.class).invoke(null, "profile");
+            Object recording = recordingClass.getConstructor(configurationClass).newInstance(configuration);
+            Method enable = recordingClass.getMethod("enable", String.class);
+            enable.invoke(recording, PHASE_EVENT);
+            enable.invoke(recording, JAR_EVENT);
+            Object classSettings = enable.invoke(recording, CLASS_EVENT);
+            classSettings.getClass().getMethod("withThreshold", Duration.class).invoke(classSettings, Duration.ofMillis(classThresholdMillis));
+            recordingClass.getMethod("setName", String.class).invoke(recording, "BON2");
+            recordingClass.getMethod("setDestination", java.nio.file.Path.class).invoke(recording, destination.getAbsoluteFile().toPath());
+            recordingClass.getMethod("setDumpOnExit", boolean.class).invoke(recording, true);
+            recordingClass.getMethod("start").invoke(recording);
+            return true;
+        } catch(InvocationTargetException e) {
+            throw new IllegalStateException("Could not start the flight recording: " + e.getCause(), e.getCause());
+        } catch(ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A started event, or one that isn't recorded at all.
+     */
+    public static class Span {
+        private final EventType type;
+        private final Object event;
+
+        private Span(EventType type, Object event) {
+            this.type = type;
+            this.event = event;
+        }
+
+        /**
+         * Ends the event and commits it with {@code values}, in the order of its fields, if the recording wants it.
+         */
+        public void commit(Object... values) {
+            if(event != null) {
+                type.commit(event, values);
+            }
+        }
+    }
+
+    /**
+     * The BON2 event types, registered with the flight recorder once it runs.
+     */
+    private static class Types {
+        static final int PHASE = 0;
+        static final int JAR = 1;
+        static final int CLASS = 2;
+
+        final EventType[] types;
+
+        Types() throws ReflectiveOperationException {
+            types = new EventType[] {
+                new EventType(PHASE_EVENT, "Remap Phase", "Loading the mappings, or reading, remapping or writing a jar", null,
+                        new Field(String.class, "phase", "Phase", null), new Field(String.class, "jar", "Jar", null)),
+                new EventType(JAR_EVENT, "Remapped Jar", "One jar remapped from start to finish", null,
+                        new Field(String.class, "input", "Input", null), new Field(String.class, "output", "Output", null),
+                        new Field(String.class, "engine", "Engine", null), new Field(String.class, "status", "Status", null),
+                        new Field(int.class, "classes", "Classes", null), new Field(int.class, "resources", "Resources Copied", null),
+                        new Field(long.class, "bytesIn", "Bytes In", "BYTES"), new Field(long.class, "bytesOut", "Bytes Out", "BYTES"),
+                        new Field(long.class, "mappingHits", "Mapping Hits", null), new Field(long.class, "mappingMisses", "Mapping Misses", null)),
+                new EventType(CLASS_EVENT, "Slow Class", "A class that took longer than the threshold to read, remap or write", DEFAULT_CLASS_THRESHOLD_MILLIS + " ms",
+                        new Field(String.class, "operation", "Operation", null), new Field(String.class, "className", "Class Name", null),
+                        new Field(long.class, "size", "Size", "BYTES"))
+            };
+        }
+    }
+
+    private static class Field {
+        final Class<?> type;
+        final String name;
+        final String label;
+        final String dataAmount;
+
+        Field(Class<?> type, String name, String label, String dataAmount) {
+            this.type = type;
+            this.name = name;
+            this.label = label;
+            this.dataAmount = dataAmount;
+        }
+    }
+
+    /**
+     * An event type made with {@code jdk.jfr.EventFactory}, and the methods of its events.
+     */
+    private static class EventType {
+        private final Object factory;
+        private final Object probe;
+        private final Method newEvent;
+        private final Method isEnabled;
+        private final Method begin;
+        private final Method end;
+        private final Method shouldCommit;
+        private final Method set;
+        private final Method commit;
+
+        EventType(String name, String label, String description, String threshold, Field... fields) throws ReflectiveOperationException {
+            Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+            Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+            Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+            Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            Constructor<?> newAnnotation = annotationElement.getConstructor(Class.class, Object.class);
+
+            List<Object> annotations = Lists.newArrayList();
+            annotations.add(newAnnotation.newInstance(annotation("jdk.jfr.Name"), name));
+            annotations.add(newAnnotation.newInstance(annotation("jdk.jfr.Label"), label));
+            annotations.add(newAnnotation.newInstance(annotation("jdk.jfr.Description"), description));
+            annotations.add(newAnnotation.newInstance(annotation("jdk.jfr.Category"), new String[] {"BON2"}));
+            annotations.add(newAnnotation.newInstance(annotation("jdk.jfr.StackTrace"), false));
+            if(threshold != null) {
+                annotations.add(newAnnotation.newInstance(annotation("jdk.jfr.Threshold"), threshold));
+            }
+            List<Object> values = Lists.newArrayList();
+            Constructor<?> newValue = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+            for(Field field : fields) {
+                List<Object> fieldAnnotations = Lists.newArrayList();
+                fieldAnnotations.add(newAnnotation.newInstance(annotation("jdk.jfr.Label"), field.label));
+                if(field.dataAmount != null) {
+                    fieldAnnotations.add(newAnnotation.newInstance(annotation("jdk.jfr.DataAmount"), field.dataAmount));
+                }
+                values.add(newValue.newInstance(field.type, field.name, Collections.unmodifiableList(fieldAnnotations)));
+            }
+            factory = eventFactory.getMethod("create", List.class, List.class).invoke(null, annotations, values);
+            newEvent = eventFactory.getMethod("newEvent");
+            isEnabled = eventClass.getMethod("isEnabled");
+            begin = eventClass.getMethod("begin");
+            end = eventClass.getMethod("end");
+            shouldCommit = eventClass.getMethod("shouldCommit");
+            set = eventClass.getMethod("set", int.class, Object.class);
+            commit = eventClass.getMethod("commit");
+            probe = newEvent.invoke(factory);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Class<? extends Annotation> annotation(String name) throws ClassNotFoundException {
+            return (Class<? extends Annotation>)Class.forName(name);
+        }
+
+        boolean isEnabled() {
+            try {
+                return (Boolean)isEnabled.invoke(probe);
+            } catch(ReflectiveOperationException e) {
+                return false;
+            }
+        }
+
+        Span begin() {
+            try {
+                Object event = newEvent.invoke(factory);
+                begin.invoke(event);
+                return new Span(this, event);
+            } catch(ReflectiveOperationException e) {
+                return NONE;
+            }
+        }
+
+        void commit(Object event, Object[] values) {
+            try {
+                end.invoke(event);
+                if((Boolean)shouldCommit.invoke(event)) {
+                    for(int i = 0; i < values.length; i++) {
+                        set.invoke(event, i, values[i]);
+                    }
+                    commit.invoke(event);
+                }
+            } catch(ReflectiveOperationException e) {
+                // the event is lost, the remap goes on
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.github.parker8283.bon2.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps count of the heap that entries of a remap hold onto, against a fixed limit.<br/>
+ * The submitting thread {@link #reserve reserves} an estimate before an entry goes to a worker and waits for older
+ * entries to be written while the estimate doesn't {@link #fits fit}. Whoever lets go of the data, the worker after
+ * spilling it to disk or the writer after writing it, {@link #release releases} it again. One entry that is bigger than
+ * the whole budget is still let through, but only once nothing else is in flight.
+ */
+public class MemoryBudget {
+    private final long limit;
+    private final AtomicLong used = new AtomicLong();
+
+    /**
+     * @param limit How many bytes the entries in flight may hold at once.
+     */
+    public MemoryBudget(long limit) {
+        this.limit = limit;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public long getUsed() {
+        return used.get();
+    }
+
+    public boolean fits(long bytes) {
+        return used.get() + bytes <= limit;
+    }
+
+    public void reserve(long bytes) {
+        used.addAndGet(bytes);
+    }
+
+    public void release(long bytes) {
+        used.addAndGet(-bytes);
+    }
+}
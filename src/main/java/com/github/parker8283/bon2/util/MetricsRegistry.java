@@ -0,0 +1,118 @@
+package com.github.parker8283.bon2.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Totals of every {@link RemapMetrics} recorded in a long-running process, in the Prometheus text exposition format.<br/>
+ * Counters only ever grow, so a scraper can rate them; the gauges describe the latest run and the current heap.
+ */
+public class MetricsRegistry {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Map<String, Long> runs = Maps.newTreeMap();
+    private final Map<RemapMetrics.Phase, long[]> phases = Maps.newEnumMap(RemapMetrics.Phase.class);
+    private long bytesIn;
+    private long bytesOut;
+    private long classes;
+    private long resources;
+    private long mappingHits;
+    private long mappingMisses;
+    private long peakHeapBytes;
+    private double lastClassesPerSecond;
+
+    /**
+     * Adds a remap. One that isn't {@link RemapMetrics#isFinished finished} threw, and is counted as failed.
+     */
+    public synchronized void record(RemapMetrics run) {
+        if(!run.isFinished()) {
+            run.fail();
+        }
+        String key = "engine=\"" + escape(run.getEngine()) + "\",status=\"" + run.getStatus().name() + "\"";
+        runs.merge(key, 1L, Long::sum);
+        for(Map.Entry<RemapMetrics.Phase, RemapMetrics.PhaseMetrics> phase : run.getPhases().entrySet()) {
+            long[] totals = phases.computeIfAbsent(phase.getKey(), p -> new long[3]);
+            totals[0]++;
+            totals[1] += phase.getValue().getWallNanos();
+            totals[2] += Math.max(0, phase.getValue().getCpuNanos());
+        }
+        bytesIn += run.getBytesIn();
+        bytesOut += run.getBytesOut();
+        classes += run.getClasses();
+        resources += run.getResources();
+        mappingHits += run.getMappingHits();
+        mappingMisses += run.getMappingMisses();
+        peakHeapBytes = Math.max(peakHeapBytes, run.getPeakHeapBytes());
+        if(run.getClasses() > 0) {
+            lastClassesPerSecond = run.getClassesPerSecond();
+        }
+    }
+
+    public synchronized String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        header(out, "bon2_remaps_total", "counter", "Remap runs by engine and outcome.");
+        for(Map.Entry<String, Long> entry : runs.entrySet()) {
+            sample(out, "bon2_remaps_total", entry.getKey(), entry.getValue());
+        }
+        header(out, "bon2_phase_runs_total", "counter", "Times each remap phase ran.");
+        for(Map.Entry<RemapMetrics.Phase, long[]> phase : phases.entrySet()) {
+            sample(out, "bon2_phase_runs_total", phaseLabel(phase.getKey()), phase.getValue()[0]);
+        }
+        header(out, "bon2_phase_seconds_total", "counter", "Wall time spent in each remap phase.");
+        for(Map.Entry<RemapMetrics.Phase, long[]> phase : phases.entrySet()) {
+            sample(out, "bon2_phase_seconds_total", phaseLabel(phase.getKey()), phase.getValue()[1] / 1e9);
+        }
+        header(out, "bon2_phase_cpu_seconds_total", "counter", "Process CPU time spent in each remap phase.");
+        for(Map.Entry<RemapMetrics.Phase, long[]> phase : phases.entrySet()) {
+            sample(out, "bon2_phase_cpu_seconds_total", phaseLabel(phase.getKey()), phase.getValue()[2] / 1e9);
+        }
+        header(out, "bon2_input_bytes_total", "counter", "Size of the remapped inputs.");
+        sample(out, "bon2_input_bytes_total", null, bytesIn);
+        header(out, "bon2_output_bytes_total", "counter", "Size of the written outputs.");
+        sample(out, "bon2_output_bytes_total", null, bytesOut);
+        header(out, "bon2_classes_total", "counter", "Classes remapped.");
+        sample(out, "bon2_classes_total", null, classes);
+        header(out, "bon2_resources_copied_total", "counter", "Resources copied to the output.");
+        sample(out, "bon2_resources_copied_total", null, resources);
+        header(out, "bon2_mapping_lookups_total", "counter", "Lookups of SRG names, by whether they had a mapping.");
+        sample(out, "bon2_mapping_lookups_total", "result=\"hit\"", mappingHits);
+        sample(out, "bon2_mapping_lookups_total", "result=\"miss\"", mappingMisses);
+        header(out, "bon2_classes_per_second", "gauge", "Throughput of the latest run with classes in it.");
+        sample(out, "bon2_classes_per_second", null, lastClassesPerSecond);
+        header(out, "bon2_peak_heap_bytes", "gauge", "Highest peak heap of any remap phase.");
+        sample(out, "bon2_peak_heap_bytes", null, peakHeapBytes);
+        header(out, "bon2_heap_used_bytes", "gauge", "Heap in use right now.");
+        sample(out, "bon2_heap_used_bytes", null, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        return out.toString();
+    }
+
+    private static String phaseLabel(RemapMetrics.Phase phase) {
+        return "phase=\"" + phase.getLabel() + "\"";
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if(labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ');
+        if(value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long)value);
+        } else {
+            out.append(String.format(Locale.ROOT, "%.6f", value));
+        }
+        out.append('\n');
+    }
+
+    private static String escape(String value) {
+        return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.parker8283.bon2.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+import com.github.parker8283.bon2.data.IErrorHandler;
+import com.github.parker8283.bon2.srg.MappingTable;
+import com.google.common.collect.Lists;
+
+/**
+ * Remaps jars embedded in a jar, such as the libraries Forge mods ship under {@code META-INF/jars/}.<br/>
+ * A nested jar is remapped in memory by {@link StreamingRemapper}, on the worker that picked it up, so it runs alongside
+ * the classes of the outer jar with the same mapping table and transformer. Jars nested in it are handled the same way,
+ * up to {@link #MAX_DEPTH} levels down. A nested jar without anything to remap keeps its exact bytes, signatures and all.
+ * <p>
+ * A nested jar and its remapped copy are held on the heap whole. Under a {@link MemoryBudget} they are charged to it
+ * with {@link #estimateHeapUse}, and the entries of the nested jar get one worker slot's share of the budget.
+ */
+public class NestedJarRemapper {
+    /** Jars nested deeper than this are copied as they are, which also stops a jar that contains itself. */
+    public static final int MAX_DEPTH = 4;
+
+    /** Rough heap a nested jar takes up while it is remapped per byte of it: the jar, the remapped jar and its compressed form. */
+    static final int HEAP_PER_NESTED_BYTE = 3;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+    static boolean isNestedJar(String name) {
+        return name.toLowerCase(Locale.ROOT).endsWith(".jar");
+    }
+
+    /**
+     * @return About how many bytes of heap remapping a nested jar of {@code size} bytes takes, for a {@link MemoryBudget}.
+     */
+    static long estimateHeapUse(long size, long maxMemory) {
+        return size * HEAP_PER_NESTED_BYTE + maxMemory + 1024;
+    }
+
+    /**
+     * @param maxMemory The budget for the entries of the nested jar in flight, or 0 for no limit. Bigger entries are
+     *                  spilled to the default temporary directory.
+     * @param depth How deep {@code bytes} itself is nested, 1 for a jar inside the input.
+     */
+    static Result remap(String name, byte[] bytes, MappingTable mappings, ClassTransformer transformer, int compressionLevel, long maxMemory, int depth) {
+        Result result = new Result(name, bytes);
+        if(depth > MAX_DEPTH || !isZip(bytes)) {
+            return result;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+        try {
+            int remapped = StreamingRemapper.remapNested(new ByteArrayInputStream(bytes), out, mappings, transformer, compressionLevel, maxMemory, depth, result::addProblem);
+            if(remapped > 0) {
+                result.bytes = out.toByteArray();
+                result.changed = true;
+            }
+        } catch(IOException | RuntimeException e) {
+            result.problems.clear();
+            result.addProblem("Could not remap the nested jar, it is copied as it is.\nCause: " + e, true);
+        }
+        return result;
+    }
+
+    private static boolean isZip(byte[] bytes) {
+        return bytes.length >= 4 && ((bytes[0] & 0xFF) | (bytes[1] & 0xFF) << 8 | (bytes[2] & 0xFF) << 16 | (bytes[3] & 0xFF) << 24) == LOCAL_HEADER_SIGNATURE;
+    }
+
+    /**
+     * A nested jar after remapping, along with the errors found in it. Those are collected rather than reported right away
+     * since the worker runs concurrently with whoever reports the errors of the outer jar.
+     */
+    static class Result {
+        final String name;
+        byte[] bytes;
+        boolean changed;
+        private final List<String> problems = Lists.newArrayList();
+        private final List<Boolean> warnings = Lists.newArrayList();
+
+        private Result(String name, byte[] bytes) {
+            this.name = name;
+            this.bytes = bytes;
+        }
+
+        private boolean addProblem(String message, boolean warning) {
+            problems.add(message);
+            warnings.add(warning);
+            return true;
+        }
+
+        /**
+         * Passes the errors found in the nested jar on to {@code errorHandler}, marked with the jar they came from.
+         */
+        void report(IErrorHandler errorHandler) {
+            for(int i = 0; i < problems.size(); i++) {
+                errorHandler.handleError("In nested jar " + name + ":\n" + problems.get(i), warnings.get(i));
+            }
+        }
+    }
+}
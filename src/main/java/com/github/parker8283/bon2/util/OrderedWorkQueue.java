@@ -0,0 +1,72 @@
+package com.github.parker8283.bon2.util;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs tasks on a pool but hands their results to a sink strictly in submission order.<br/>
+ * At most {@code window} tasks are in flight; submitting more first drains the oldest result, which keeps memory bounded
+ * when results are large.
+ */
+public class OrderedWorkQueue<T> {
+    private final ExecutorService pool;
+    private final int window;
+    private final Sink<T> sink;
+    private final Deque<Future<T>> pending = new ArrayDeque<>();
+
+    public OrderedWorkQueue(ExecutorService pool, int window, Sink<T> sink) {
+        this.pool = pool;
+        this.window = Math.max(1, window);
+        this.sink = sink;
+    }
+
+    public void submit(Callable<T> task) throws IOException {
+        while(pending.size() >= window) {
+            drainOne();
+        }
+        pending.add(pool.submit(task));
+    }
+
+    /**
+     * Queues a result that needs no work, keeping its place in the order.
+     */
+    public void add(T result) throws IOException {
+        while(pending.size() >= window) {
+            drainOne();
+        }
+        pending.add(CompletableFuture.completedFuture(result));
+    }
+
+    /**
+     * Hands results to the sink, oldest first, for as long as {@code condition} holds and anything is in flight. Lets a
+     * caller wait for room by some other measure than the window, such as a {@link MemoryBudget}.
+     */
+    public void drainWhile(BooleanSupplier condition) throws IOException {
+        while(!pending.isEmpty() && condition.getAsBoolean()) {
+            drainOne();
+        }
+    }
+
+    /**
+     * Waits for every submitted task and passes the remaining results to the sink.
+     */
+    public void finish() throws IOException {
+        while(!pending.isEmpty()) {
+            drainOne();
+        }
+    }
+
+    private void drainOne() throws IOException {
+        sink.accept(ConcurrencyUtils.await(pending.poll()));
+    }
+
+    public interface Sink<T> {
+        void accept(T result) throws IOException;
+    }
+}
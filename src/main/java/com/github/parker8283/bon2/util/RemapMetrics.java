@@ -0,0 +1,438 @@
+package com.github.parker8283.bon2.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.github.parker8283.bon2.io.ZipArchive;
+import com.github.parker8283.bon2.srg.MappingTable;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * What one remap cost, phase by phase: wall and CPU time and peak heap of each phase, plus bytes, classes and resources
+ * of the whole run and how many SRG names had a mapping.<br/>
+ * Only the tree engine has separate read, remap and write phases; the streaming and constant pool engines, directory
+ * inputs and any run with a memory limit do all three in one pass, recorded as {@link Phase#STREAM}.
+ * <p>
+ * CPU time and peak heap are process wide, so runs that overlap in one JVM (batch jobs, server requests) see each
+ * other's work in them and over-count. Peak heap is the most heap in use when the phase began or ended, or just before
+ * any garbage collection while it ran, which is when the heap is fullest. Nothing global is reset, so overlapping
+ * phases don't disturb each other's peaks.
+ */
+public class RemapMetrics {
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+
+    public enum Phase {
+        LOAD_MAPPINGS("loadMappings"),
+        READ("read"),
+        REMAP("remap"),
+        WRITE("write"),
+        STREAM("stream");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    public enum Status {
+        OK, WARNINGS, CACHED, FAILED
+    }
+
+    private final Map<Phase, PhaseMetrics> phases = Maps.newEnumMap(Phase.class);
+    private final LongAdder mappingHits = new LongAdder();
+    private final LongAdder mappingMisses = new LongAdder();
+    private final long startNanos = System.nanoTime();
+    private long wallNanos = -1;
+    private String input;
+    private String output;
+    private String engine;
+    private Status status = Status.OK;
+    private int problems;
+    private long bytesIn;
+    private long bytesOut;
+    private int classes;
+    private int resources;
+
+    public RemapMetrics setInput(String input) {
+        this.input = input;
+        return this;
+    }
+
+    public RemapMetrics setOutput(String output) {
+        this.output = output;
+        return this;
+    }
+
+    public RemapMetrics setEngine(String engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    /**
+     * Starts timing {@code phase} until {@link Span#end()} is called, which belongs in a {@code finally}; a phase entered
+     * twice adds up.
+     */
+    public Span begin(Phase phase) {
+        return new Span(phase);
+    }
+
+    /**
+     * @return A view of {@code table} that counts this run's mapping hits and misses.
+     */
+    public MappingTable countLookups(MappingTable table) {
+        return table.withLookupCounters(mappingHits, mappingMisses);
+    }
+
+    /**
+     * Counts the classes and copied resources of {@code input}, a jar or a directory of classes. Reading a jar's central
+     * directory is cheap next to remapping it.
+     */
+    public void countEntries(File input) throws IOException {
+        classes = 0;
+        resources = 0;
+        if(input.isDirectory()) {
+            Path root = input.toPath();
+            try(Stream<Path> paths = Files.walk(root)) {
+                paths.filter(Files::isRegularFile).forEach(path -> countEntry(root.relativize(path).toString().replace(File.separatorChar, '/')));
+            }
+            return;
+        }
+        ZipArchive zip;
+        try {
+            zip = new ZipArchive(input);
+        } catch(ZipException e) {
+            countStreamEntries(input); // remapped from its local headers, count them the same way
+            return;
+        }
+        try {
+            for(ZipArchive.Entry entry : zip.getEntries()) {
+                if(!entry.isDirectory()) {
+                    countEntry(entry.getName());
+                }
+            }
+        } finally {
+            zip.close();
+        }
+    }
+
+    private void countStreamEntries(File input) throws IOException {
+        try(ZipInputStream zin = new ZipInputStream(new BufferedInputStream(new FileInputStream(input)))) {
+            ZipEntry entry;
+            while((entry = zin.getNextEntry()) != null) {
+                if(!entry.isDirectory()) {
+                    countEntry(entry.getName());
+                }
+            }
+        }
+    }
+
+    private void countEntry(String name) {
+        if(name.endsWith(".class")) {
+            classes++;
+        } else if(JarUtils.isCopiedResource(name)) {
+            resources++;
+        }
+    }
+
+    public void setBytes(long bytesIn, long bytesOut) {
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+    }
+
+    /**
+     * Ends the run. Later calls only update the status.
+     */
+    public void finish(Status status, int problems) {
+        this.status = status;
+        this.problems = problems;
+        if(wallNanos < 0) {
+            wallNanos = System.nanoTime() - startNanos;
+        }
+    }
+
+    /**
+     * Ends a run that threw before it could be {@link #finish finished}.
+     */
+    public void fail() {
+        finish(Status.FAILED, problems);
+    }
+
+    public boolean isFinished() {
+        return wallNanos >= 0;
+    }
+
+    public Map<Phase, PhaseMetrics> getPhases() {
+        return phases;
+    }
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public long getWallNanos() {
+        return wallNanos >= 0 ? wallNanos : System.nanoTime() - startNanos;
+    }
+
+    /**
+     * @return The CPU time of all phases, or -1 if the JVM can't tell.
+     */
+    public long getCpuNanos() {
+        long total = 0;
+        for(PhaseMetrics phase : phases.values()) {
+            if(phase.cpuNanos < 0) {
+                return -1;
+            }
+            total += phase.cpuNanos;
+        }
+        return total;
+    }
+
+    public long getPeakHeapBytes() {
+        long peak = 0;
+        for(PhaseMetrics phase : phases.values()) {
+            peak = Math.max(peak, phase.peakHeapBytes);
+        }
+        return peak;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public int getClasses() {
+        return classes;
+    }
+
+    public int getResources() {
+        return resources;
+    }
+
+    /**
+     * @return Classes per second of everything but loading the mappings, which most runs get from memory or the cache.
+     */
+    public double getClassesPerSecond() {
+        long nanos = 0;
+        for(Map.Entry<Phase, PhaseMetrics> phase : phases.entrySet()) {
+            if(phase.getKey() != Phase.LOAD_MAPPINGS) {
+                nanos += phase.getValue().wallNanos;
+            }
+        }
+        return nanos == 0 ? 0 : classes * 1e9 / nanos;
+    }
+
+    public long getMappingHits() {
+        return mappingHits.sum();
+    }
+
+    public long getMappingMisses() {
+        return mappingMisses.sum();
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = Maps.newLinkedHashMap();
+        result.put("input", input);
+        result.put("output", output);
+        result.put("engine", engine);
+        result.put("status", status.name());
+        result.put("problems", problems);
+        result.put("wallMillis", toMillis(getWallNanos()));
+        result.put("cpuMillis", toMillis(getCpuNanos()));
+        result.put("bytesIn", bytesIn);
+        result.put("bytesOut", bytesOut);
+        result.put("classes", classes);
+        result.put("resourcesCopied", resources);
+        result.put("classesPerSecond", Math.round(getClassesPerSecond() * 10) / 10.0);
+        result.put("mappingHits", getMappingHits());
+        result.put("mappingMisses", getMappingMisses());
+        result.put("peakHeapBytes", getPeakHeapBytes());
+        Map<String, Object> phaseResults = Maps.newLinkedHashMap();
+        for(Map.Entry<Phase, PhaseMetrics> phase : phases.entrySet()) {
+            Map<String, Object> phaseResult = Maps.newLinkedHashMap();
+            phaseResult.put("wallMillis", toMillis(phase.getValue().wallNanos));
+            phaseResult.put("cpuMillis", toMillis(phase.getValue().cpuNanos));
+            phaseResult.put("peakHeapBytes", phase.getValue().peakHeapBytes);
+            phaseResults.put(phase.getKey().getLabel(), phaseResult);
+        }
+        result.put("phases", phaseResults);
+        return result;
+    }
+
+    /**
+     * @return {@link #toMap()} as JSON on a single line.
+     */
+    public String toJson() {
+        return GSON.toJson(toMap());
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%d classes in %.1f s (%.0f classes/s), %d of %d SRG names mapped, peak heap %d MB",
+                classes, getWallNanos() / 1e9, getClassesPerSecond(), getMappingHits(), getMappingHits() + getMappingMisses(), getPeakHeapBytes() / (1024 * 1024));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos < 0 ? -1 : Math.round(nanos / 1e5) / 10.0;
+    }
+
+    private static long getHeapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * @return The CPU time used by the whole process, or -1 if the JVM doesn't report it.
+     */
+    static long getProcessCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if(os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean)os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    public static class PhaseMetrics {
+        private long wallNanos;
+        private long cpuNanos;
+        private long peakHeapBytes;
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * @return -1 if the JVM doesn't report CPU time.
+         */
+        public long getCpuNanos() {
+            return cpuNanos;
+        }
+
+        public long getPeakHeapBytes() {
+            return peakHeapBytes;
+        }
+    }
+
+    public class Span {
+        private final Phase phase;
+        private final long startWall;
+        private final long startCpu;
+        private final AtomicLong peakHeap = new AtomicLong(getHeapUsed());
+
+        private Span(Phase phase) {
+            this.phase = phase;
+            HeapWatcher.open(this);
+            startCpu = getProcessCpuNanos();
+            startWall = System.nanoTime();
+        }
+
+        void sampleHeap(long used) {
+            peakHeap.accumulateAndGet(used, Math::max);
+        }
+
+        public void end() {
+            long wall = System.nanoTime() - startWall;
+            long cpu = getProcessCpuNanos();
+            HeapWatcher.close(this);
+            long peak = Math.max(peakHeap.get(), getHeapUsed());
+            synchronized(phases) {
+                PhaseMetrics metrics = phases.computeIfAbsent(phase, key -> new PhaseMetrics());
+                metrics.wallNanos += wall;
+                metrics.cpuNanos = cpu < 0 || startCpu < 0 || metrics.cpuNanos < 0 ? -1 : metrics.cpuNanos + cpu - startCpu;
+                metrics.peakHeapBytes = Math.max(metrics.peakHeapBytes, peak);
+            }
+        }
+    }
+
+    /**
+     * Passes the heap in use just before every garbage collection to the open spans. Listens to the collectors once the
+     * first span opens; on a JVM without GC notifications spans only see the heap at their start and end.
+     */
+    private static class HeapWatcher {
+        private static final Set<Span> OPEN = Sets.newConcurrentHashSet();
+        private static boolean installed;
+
+        static void open(Span span) {
+            install();
+            OPEN.add(span);
+        }
+
+        static void close(Span span) {
+            OPEN.remove(span);
+        }
+
+        private static synchronized void install() {
+            if(installed) {
+                return;
+            }
+            installed = true;
+            try {
+                Set<String> heapPools = Sets.newHashSet();
+                for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                    if(pool.getType() == MemoryType.HEAP) {
+                        heapPools.add(pool.getName());
+                    }
+                }
+                NotificationListener listener = (notification, handback) -> {
+                    if(!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType()) || OPEN.isEmpty()) {
+                        return;
+                    }
+                    GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData)notification.getUserData());
+                    long used = 0;
+                    for(Map.Entry<String, MemoryUsage> pool : info.getGcInfo().getMemoryUsageBeforeGc().entrySet()) {
+                        if(heapPools.contains(pool.getKey())) {
+                            used += pool.getValue().getUsed();
+                        }
+                    }
+                    for(Span span : OPEN) {
+                        span.sampleHeap(used);
+                    }
+                };
+                for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                    if(collector instanceof NotificationEmitter) {
+                        ((NotificationEmitter)collector).addNotificationListener(listener, null, null);
+                    }
+                }
+            } catch(LinkageError | RuntimeException e) {
+                // no com.sun.management, peaks come from the span boundaries only
+            }
+        }
+    }
+}
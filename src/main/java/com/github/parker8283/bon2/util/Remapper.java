@@ -1,58 +1,179 @@
 package com.github.parker8283.bon2.util;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.objectweb.asm.tree.*;
 
 import com.github.parker8283.bon2.data.IProgressListener;
 import com.github.parker8283.bon2.srg.ClassCollection;
-import com.github.parker8283.bon2.srg.Mapping;
-import com.github.parker8283.bon2.srg.Repo;
+import com.github.parker8283.bon2.srg.MappingTable;
 
 public class Remapper {
 
-    public static ClassCollection remap(ClassCollection cc, IProgressListener progress) {
-        progress.start(cc.getClasses().size(), "Remapping");
-        int classesRemapped = 0;
-        progress.setMax(cc.getClasses().size());
-        for(ClassNode classNode : cc.getClasses()) {
-            for(MethodNode method : classNode.methods) {
-                if(hasRemap(method.name)) {
-                    Mapping mapping = getRemap(method.name);
-                    method.name = mapping.getMcpName();
-                }
-                if(method.instructions != null && method.instructions.size() > 0) {
-                    for(AbstractInsnNode node : method.instructions.toArray()) {
-                        if(node instanceof FieldInsnNode) {
-                            FieldInsnNode field = (FieldInsnNode)node;
-                            if(hasRemap(field.name)) {
-                                Mapping mapping = getRemap(field.name);
-                                field.name = mapping.getMcpName();
-                            }
-                        } else if(node instanceof MethodInsnNode) {
-                            MethodInsnNode methodInsn = (MethodInsnNode)node;
-                            if(hasRemap(methodInsn.name)) {
-                                Mapping mapping = getRemap(methodInsn.name);
-                                methodInsn.name = mapping.getMcpName();
-                            }
-                        }
+    public static ClassCollection remap(ClassCollection cc, MappingTable mappings, IProgressListener progress) {
+        return remap(cc, mappings, 1, progress);
+    }
+
+    /**
+     * Remaps every class in the collection, spreading the classes over {@code threads} workers when more than one is requested.
+     * The lookup table is only read here, so classes can be processed independently.
+     */
+    public static ClassCollection remap(ClassCollection cc, MappingTable mappings, int threads, IProgressListener progress) {
+        JfrEvents.Span phase = JfrEvents.beginPhase();
+        try {
+            return remapClasses(cc, mappings, threads, progress);
+        } finally {
+            phase.commit("remap", cc.getSource() != null ? cc.getSource().getFile().getName() : null);
+        }
+    }
+
+    private static ClassCollection remapClasses(ClassCollection cc, MappingTable mappings, int threads, IProgressListener progress) {
+        List<ClassNode> classes = cc.getClasses();
+        progress.start(classes.size(), "Remapping");
+        progress.setMax(classes.size());
+        if(threads <= 1 || classes.size() < 2) {
+            int classesRemapped = 0;
+            for(ClassNode classNode : classes) {
+                remapTimed(classNode, mappings);
+                progress.setProgress(++classesRemapped);
+            }
+            return cc;
+        }
+
+        // Biggest classes first, so a few huge ones can't end up as the tail that leaves every other core idle
+        long[] costs = new long[classes.size()];
+        Integer[] order = new Integer[classes.size()];
+        for(int i = 0; i < costs.length; i++) {
+            costs[i] = getCost(classes.get(i));
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong((Integer i) -> costs[i]).reversed());
+        ClassNode[] byCost = new ClassNode[order.length];
+        long[] cumulativeCost = new long[order.length + 1];
+        for(int i = 0; i < order.length; i++) {
+            byCost[i] = classes.get(order[i]);
+            cumulativeCost[i + 1] = cumulativeCost[i] + costs[order[i]];
+        }
+        long leafCost = Math.max(1, cumulativeCost[byCost.length] / (threads * 8L));
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new RemapTask(byCost, mappings, cumulativeCost, 0, byCost.length, leafCost, new AtomicInteger(), progress));
+        } finally {
+            pool.shutdown();
+        }
+        return cc;
+    }
+
+    /**
+     * {@link ClassTransformer} version of {@link #remapClass(ClassNode, MappingTable)}, for inputs that aren't read into a
+     * {@link ClassCollection}.
+     */
+    public static byte[] remapClass(ConstantPoolScanner classFile, MappingTable mappings) {
+        ClassNode classNode = IOUtils.readClassFromBytes(classFile.getBytes());
+        remapClass(classNode, mappings);
+        return IOUtils.writeClassToBytes(classNode);
+    }
+
+    public static void remapClass(ClassNode classNode, MappingTable mappings) {
+        for(MethodNode method : classNode.methods) {
+            method.name = mappings.remap(method.name);
+            if(method.parameters != null) {
+                for(ParameterNode parameter : method.parameters) {
+                    if(parameter.name != null) {
+                        parameter.name = mappings.remapParam(parameter.name);
                     }
                 }
             }
-            for(FieldNode field : classNode.fields) {
-                if(hasRemap(field.name)) {
-                    Mapping mapping = getRemap(field.name);
-                    field.name = mapping.getMcpName();
+            if(method.localVariables != null) {
+                for(LocalVariableNode local : method.localVariables) {
+                    local.name = mappings.remapParam(local.name);
+                }
+            }
+            if(method.instructions != null && method.instructions.size() > 0) {
+                for(AbstractInsnNode node : method.instructions.toArray()) {
+                    if(node instanceof FieldInsnNode) {
+                        FieldInsnNode field = (FieldInsnNode)node;
+                        field.name = mappings.remap(field.name);
+                    } else if(node instanceof MethodInsnNode) {
+                        MethodInsnNode methodInsn = (MethodInsnNode)node;
+                        methodInsn.name = mappings.remap(methodInsn.name);
+                    }
                 }
             }
-            progress.setProgress(++classesRemapped);
         }
-        return cc;
+        for(FieldNode field : classNode.fields) {
+            field.name = mappings.remap(field.name);
+        }
     }
 
-    private static boolean hasRemap(String key) {
-        return Repo.repo.containsKey(key);
+    /**
+     * {@link #remapClass(ClassNode, MappingTable)} with a {@link JfrEvents} class event. There are no class file bytes
+     * here, so the size is -1.
+     */
+    private static void remapTimed(ClassNode classNode, MappingTable mappings) {
+        JfrEvents.Span event = JfrEvents.beginClass();
+        remapClass(classNode, mappings);
+        event.commit("remap", classNode.name, -1L);
     }
 
-    private static Mapping getRemap(String key) {
-        return Repo.repo.get(key);
+    /**
+     * Rough amount of work {@link #remapClass} does on a class: one unit per instruction and per member.
+     */
+    static long getCost(ClassNode classNode) {
+        long cost = classNode.fields.size();
+        for(MethodNode method : classNode.methods) {
+            cost += 1 + (method.instructions != null ? method.instructions.size() : 0);
+        }
+        return cost;
+    }
+
+    /**
+     * Splits a cost-sorted range into two halves of roughly equal total cost until a range is either a single class or
+     * cheap enough to run as a leaf. Idle workers steal the forked halves.
+     */
+    private static class RemapTask extends RecursiveAction {
+        private static final long serialVersionUID = 4155532385431524906L;
+
+        private final ClassNode[] classes;
+        private final MappingTable mappings;
+        private final long[] cumulativeCost;
+        private final int from;
+        private final int to;
+        private final long leafCost;
+        private final AtomicInteger classesRemapped;
+        private final IProgressListener progress;
+
+        RemapTask(ClassNode[] classes, MappingTable mappings, long[] cumulativeCost, int from, int to, long leafCost, AtomicInteger classesRemapped, IProgressListener progress) {
+            this.classes = classes;
+            this.mappings = mappings;
+            this.cumulativeCost = cumulativeCost;
+            this.from = from;
+            this.to = to;
+            this.leafCost = leafCost;
+            this.classesRemapped = classesRemapped;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from == 1 || cumulativeCost[to] - cumulativeCost[from] <= leafCost) {
+                for(int i = from; i < to; i++) {
+                    remapTimed(classes[i], mappings);
+                    progress.setProgress(classesRemapped.incrementAndGet());
+                }
+                return;
+            }
+            long half = (cumulativeCost[from] + cumulativeCost[to]) / 2;
+            int split = Arrays.binarySearch(cumulativeCost, from + 1, to, half);
+            split = split >= 0 ? split : Math.min(to - 1, Math.max(from + 1, -split - 1));
+            invokeAll(new RemapTask(classes, mappings, cumulativeCost, from, split, leafCost, classesRemapped, progress),
+                      new RemapTask(classes, mappings, cumulativeCost, split, to, leafCost, classesRemapped, progress));
+        }
     }
 }
@@ -0,0 +1,57 @@
+package com.github.parker8283.bon2.util;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.github.parker8283.bon2.srg.MappingTable;
+
+/**
+ * Visitor counterpart of {@link Remapper}: renames SRG fields, methods, member references, parameters and local variables
+ * as the class streams past. Every method body is remapped: looking up a name that has no mapping costs less than
+ * scanning the constant pool first to find out whether any instruction needs it.
+ */
+public class RemappingClassVisitor extends ClassVisitor {
+    private final MappingTable mappings;
+
+    public RemappingClassVisitor(ClassVisitor cv, MappingTable mappings) {
+        super(Opcodes.ASM5, cv);
+        this.mappings = mappings;
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        return super.visitField(access, mappings.remap(name), desc, signature, value);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        MethodVisitor mv = super.visitMethod(access, mappings.remap(name), desc, signature, exceptions);
+        if(mv == null) {
+            return mv;
+        }
+        return new MethodVisitor(Opcodes.ASM5, mv) {
+            @Override
+            public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+                super.visitFieldInsn(opcode, owner, mappings.remap(name), desc);
+            }
+
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+                super.visitMethodInsn(opcode, owner, mappings.remap(name), desc, itf);
+            }
+
+            @Override
+            public void visitParameter(String name, int access) {
+                super.visitParameter(name != null ? mappings.remapParam(name) : null, access);
+            }
+
+            @Override
+            public void visitLocalVariable(String name, String desc, String signature, Label start, Label end, int index) {
+                super.visitLocalVariable(mappings.remapParam(name), desc, signature, start, end, index);
+            }
+        };
+    }
+}
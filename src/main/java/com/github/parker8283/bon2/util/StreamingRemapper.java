@@ -0,0 +1,429 @@
+package com.github.parker8283.bon2.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import com.github.parker8283.bon2.data.IErrorHandler;
+import com.github.parker8283.bon2.data.IProgressListener;
+import com.github.parker8283.bon2.data.RemapOptions;
+import com.github.parker8283.bon2.io.ZipArchive;
+import com.github.parker8283.bon2.io.ZipArchiveWriter;
+import com.github.parker8283.bon2.srg.MappingTable;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Remaps a jar entry by entry without ever building a {@link com.github.parker8283.bon2.srg.ClassCollection}.<br/>
+ * By default each class goes ClassReader -> {@link RemappingClassVisitor} -> ClassWriter(0). The writer builds a fresh
+ * constant pool: one copied from the reader would keep every old SRG name next to its replacement, and without it every
+ * instruction goes through the writer anyway, so all code is remapped without checking first whether it needs to be. Another {@link ClassTransformer}, such as
+ * {@link ConstantPoolRemapper}, can be plugged in instead. Resources, and classes whose constant pool has no
+ * mapped names, are copied without being inflated.
+ */
+public class StreamingRemapper {
+    private static final IProgressListener NO_PROGRESS = new IProgressListener() {
+        @Override
+        public void start(int max, String label) {
+        }
+
+        @Override
+        public void startWithoutProgress(String label) {
+        }
+
+        @Override
+        public void setProgress(int value) {
+        }
+
+        @Override
+        public void setMax(int max) {
+        }
+
+        @Override
+        public void setLabel(String label) {
+        }
+    };
+
+    public static void remap(File input, File output, MappingTable mappings, IErrorHandler errorHandler, IProgressListener progress) throws IOException {
+        remap(input, output, mappings, RemapOptions.DEFAULT_THREADS, Deflater.DEFAULT_COMPRESSION, errorHandler, progress);
+    }
+
+    public static void remap(File input, File output, MappingTable mappings, int threads, int compressionLevel, IErrorHandler errorHandler, IProgressListener progress) throws IOException {
+        remap(input, output, mappings, StreamingRemapper::remapClass, threads, compressionLevel, errorHandler, progress);
+    }
+
+    /**
+     * Entries are read, remapped and compressed on {@code threads} workers and written in archive order. Only a small
+     * window of entries is in flight at any time, so memory use doesn't grow with the size of the jar.
+     * @param transformer Remaps the classes that have mapped names in their constant pool.
+     * @param compressionLevel A {@link Deflater} level, or {@link ZipArchiveWriter#STORED} to skip compression.
+     */
+    public static void remap(File input, File output, MappingTable mappings, ClassTransformer transformer, int threads, int compressionLevel, IErrorHandler errorHandler, IProgressListener progress) throws IOException {
+        remap(input, output, mappings, transformer, threads, compressionLevel, 0, errorHandler, progress);
+    }
+
+    /**
+     * Like {@link #remap(File, File, MappingTable, ClassTransformer, int, int, IErrorHandler, IProgressListener)}, but
+     * with a limit on the heap the entries in flight may use.<br/>
+     * Before a class goes to a worker, its share of the {@link MemoryBudget} is estimated; while it doesn't fit, older
+     * entries are written first. Compressed output that is bigger than one worker slot's share of the budget is spilled to
+     * a temporary directory next to {@code output} instead of waiting on the heap for its turn.
+     * @param maxMemory The budget in bytes, or 0 to only limit the number of entries in flight.
+     */
+    public static void remap(File input, File output, MappingTable mappings, ClassTransformer transformer, int threads, int compressionLevel, long maxMemory, IErrorHandler errorHandler, IProgressListener progress) throws IOException {
+        JfrEvents.Span phase = JfrEvents.beginPhase();
+        try {
+            remapFile(input, output, mappings, transformer, threads, compressionLevel, maxMemory, errorHandler, progress);
+        } finally {
+            phase.commit("stream", input.getName());
+        }
+    }
+
+    private static void remapFile(File input, File output, MappingTable mappings, ClassTransformer transformer, int threads, int compressionLevel, long maxMemory, IErrorHandler errorHandler, IProgressListener progress) throws IOException {
+        ZipArchive archive;
+        try {
+            archive = new ZipArchive(input);
+        } catch(ZipException e) {
+            // the central directory is unusable, like JarUtils.readFromJar fall back to reading the local headers in order
+            try(InputStream in = new BufferedInputStream(new FileInputStream(input));
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(output))) {
+                remapStream(in, out, mappings, transformer, threads, compressionLevel, maxMemory, 0, errorHandler, progress);
+            }
+            return;
+        }
+        try {
+            remapArchive(archive, input, output, mappings, transformer, threads, compressionLevel, maxMemory, errorHandler, progress);
+        } finally {
+            archive.close();
+        }
+    }
+
+    private static void remapArchive(ZipArchive zip, File input, File output, MappingTable mappings, ClassTransformer transformer, int threads, int compressionLevel, long maxMemory, IErrorHandler errorHandler, IProgressListener progress) throws IOException {
+        if(output.exists()) {
+            output.delete();
+        }
+        long fileSize = input.length();
+        AtomicLong currentProgress = new AtomicLong();
+        Set<String> dirs = Sets.newHashSet();
+        Set<String> writtenEntries = Sets.newHashSet();
+        MemoryBudget budget = maxMemory > 0 ? new MemoryBudget(maxMemory) : null;
+        long spillThreshold = maxMemory / (threads * JarUtils.IN_FLIGHT_PER_THREAD);
+        Path spillDir = budget != null ? Files.createTempDirectory(output.getAbsoluteFile().getParentFile().toPath(), ".bon2-spill") : null;
+        progress.start((int)fileSize, "Remapping JAR");
+        ExecutorService pool = ConcurrencyUtils.newWorkerPool(threads, "BON2 Remapper");
+        try(ZipArchiveWriter zout = new ZipArchiveWriter(new BufferedOutputStream(new FileOutputStream(output)))) {
+            OrderedWorkQueue<RemappedEntry> queue = new OrderedWorkQueue<>(pool, threads * JarUtils.IN_FLIGHT_PER_THREAD, remapped -> {
+                if(remapped.nested != null) {
+                    remapped.nested.report(errorHandler);
+                }
+                if(remapped.error != null) {
+                    errorHandler.handleError(remapped.error, remapped.warning);
+                } else if(remapped.rawEntry != null) {
+                    zout.writeRaw(zip, remapped.rawEntry);
+                } else {
+                    zout.write(remapped.record);
+                }
+                if(budget != null) {
+                    budget.release(remapped.heapSize());
+                }
+                progress.setProgress((int)currentProgress.addAndGet(remapped.inputSize));
+            });
+            writtenEntries.add(JarFile.MANIFEST_NAME);
+            JarUtils.addDirectories(JarFile.MANIFEST_NAME, dirs);
+            byte[] manifest = JarUtils.writeManifest(JarUtils.stripManifest(zip.getManifest()));
+            zout.write(ZipArchiveWriter.compress(JarFile.MANIFEST_NAME, manifest, compressionLevel));
+
+            for(ZipArchive.Entry entry : zip.getEntries()) {
+                String name = entry.getName();
+                boolean isClass = name.endsWith(".class");
+                if(entry.isDirectory() || !(isClass || JarUtils.isCopiedResource(name)) || !writtenEntries.add(name)) {
+                    continue;
+                }
+                JarUtils.addDirectories(name, dirs);
+                if(!isClass && ZipArchive.canCopyRaw(entry) && !NestedJarRemapper.isNestedJar(name)) {
+                    queue.add(new RemappedEntry(entry));
+                    continue;
+                }
+                if(budget == null) {
+                    queue.submit(() -> remapEntry(zip, entry, mappings, transformer, compressionLevel, 0));
+                    continue;
+                }
+                long estimate = !isClass && NestedJarRemapper.isNestedJar(name) ? NestedJarRemapper.estimateHeapUse(entry.getSize(), spillThreshold) : JarUtils.estimateHeapUse(entry.getSize());
+                submitWithinBudget(queue, budget, estimate, spillDir, spillThreshold, () -> remapEntry(zip, entry, mappings, transformer, compressionLevel, spillThreshold));
+            }
+            queue.finish();
+            for(String dirPath : dirs) {
+                String dirEntryName = dirPath + "/";
+                if(writtenEntries.add(dirEntryName)) {
+                    zout.writeDirectory(dirEntryName);
+                }
+            }
+            progress.setProgress((int)fileSize);
+        } finally {
+            pool.shutdownNow();
+            if(spillDir != null) {
+                deleteSpillDir(spillDir);
+            }
+        }
+    }
+
+    /**
+     * Remaps a jar read from a stream, such as stdin, into another stream, such as stdout.<br/>
+     * Nothing is ever seeked: entries are taken in the order of their local headers, so a jar doesn't have to be on disk or
+     * even complete before remapping starts. Since the stream only yields inflated data, resources and classes without
+     * mapped names are compressed again instead of copied raw. The manifest is written where it is found, which in any jar
+     * written by the usual tools is first, or at the end if there is none.
+     * @param maxMemory The budget in bytes, or 0 to only limit the number of entries in flight. Spill files go to the
+     *                  default temporary directory.
+     */
+    public static void remap(InputStream input, OutputStream output, MappingTable mappings, ClassTransformer transformer, int threads, int compressionLevel, long maxMemory, IErrorHandler errorHandler, IProgressListener progress) throws IOException {
+        JfrEvents.Span phase = JfrEvents.beginPhase();
+        try {
+            remapStream(input, output, mappings, transformer, threads, compressionLevel, maxMemory, 0, errorHandler, progress);
+        } finally {
+            phase.commit("stream", "-");
+        }
+    }
+
+    /**
+     * Remaps a jar nested {@code depth} levels deep on the calling thread, for {@link NestedJarRemapper}.
+     * @return How many entries needed remapping, if 0 the original jar can be kept.
+     */
+    static int remapNested(InputStream input, OutputStream output, MappingTable mappings, ClassTransformer transformer, int compressionLevel, long maxMemory, int depth, IErrorHandler errorHandler) throws IOException {
+        return remapStream(input, output, mappings, transformer, 1, compressionLevel, maxMemory, depth, errorHandler, NO_PROGRESS);
+    }
+
+    private static int remapStream(InputStream input, OutputStream output, MappingTable mappings, ClassTransformer transformer, int threads, int compressionLevel, long maxMemory, int depth, IErrorHandler errorHandler, IProgressListener progress) throws IOException {
+        AtomicInteger remappedEntries = new AtomicInteger();
+        Set<String> dirs = Sets.newHashSet();
+        Set<String> writtenEntries = Sets.newHashSet();
+        MemoryBudget budget = maxMemory > 0 ? new MemoryBudget(maxMemory) : null;
+        long spillThreshold = maxMemory / (threads * JarUtils.IN_FLIGHT_PER_THREAD);
+        Path spillDir = budget != null ? Files.createTempDirectory("bon2-spill") : null;
+        AtomicInteger entriesDone = new AtomicInteger();
+        progress.startWithoutProgress("Remapping JAR from stream");
+        ExecutorService pool = ConcurrencyUtils.newWorkerPool(threads, "BON2 Remapper");
+        try(ZipInputStream zin = new ZipInputStream(input, StandardCharsets.UTF_8);
+            ZipArchiveWriter zout = new ZipArchiveWriter(output)) {
+            OrderedWorkQueue<RemappedEntry> queue = new OrderedWorkQueue<>(pool, threads * JarUtils.IN_FLIGHT_PER_THREAD, remapped -> {
+                if(remapped.nested != null) {
+                    remapped.nested.report(errorHandler);
+                }
+                if(remapped.error != null) {
+                    errorHandler.handleError(remapped.error, remapped.warning);
+                } else {
+                    zout.write(remapped.record);
+                }
+                if(budget != null) {
+                    budget.release(remapped.heapSize());
+                }
+                progress.setProgress(entriesDone.incrementAndGet());
+            });
+            ZipEntry entry;
+            while((entry = zin.getNextEntry()) != null) {
+                String name = entry.getName();
+                boolean isClass = name.endsWith(".class");
+                boolean isManifest = name.equalsIgnoreCase(JarFile.MANIFEST_NAME);
+                if(entry.isDirectory() || !(isClass || isManifest || JarUtils.isCopiedResource(name)) || !writtenEntries.add(isManifest ? JarFile.MANIFEST_NAME : name)) {
+                    continue;
+                }
+                JarUtils.addDirectories(name, dirs);
+                byte[] bytes = ByteStreams.toByteArray(zin);
+                if(isManifest) {
+                    byte[] manifest = JarUtils.writeManifest(JarUtils.stripManifest(new Manifest(new ByteArrayInputStream(bytes))));
+                    queue.add(new RemappedEntry(bytes.length, ZipArchiveWriter.compress(JarFile.MANIFEST_NAME, manifest, compressionLevel), null, false));
+                    continue;
+                }
+                Callable<RemappedEntry> task = () -> {
+                    if(!isClass && NestedJarRemapper.isNestedJar(name)) {
+                        NestedJarRemapper.Result nested = NestedJarRemapper.remap(name, bytes, mappings, transformer, compressionLevel, spillThreshold, depth + 1);
+                        if(nested.changed) {
+                            remappedEntries.incrementAndGet();
+                        }
+                        return new RemappedEntry(bytes.length, ZipArchiveWriter.compress(name, nested.bytes, compressionLevel), null, false).withNested(nested);
+                    }
+                    JarUtils.LoadedEntry loaded = isClass ? remapClassEntry(name, bytes, mappings, transformer) : new JarUtils.LoadedEntry(bytes, null, null, false);
+                    if(loaded.error != null) {
+                        return new RemappedEntry(bytes.length, null, loaded.error, loaded.warning);
+                    }
+                    if(isClass && !loaded.unmapped) {
+                        remappedEntries.incrementAndGet();
+                    }
+                    return new RemappedEntry(bytes.length, ZipArchiveWriter.compress(name, loaded.bytes, compressionLevel), null, false);
+                };
+                if(budget == null) {
+                    queue.submit(task);
+                } else {
+                    long estimate = !isClass && NestedJarRemapper.isNestedJar(name) ? NestedJarRemapper.estimateHeapUse(bytes.length, spillThreshold) : JarUtils.estimateHeapUse(bytes.length);
+                    submitWithinBudget(queue, budget, estimate, spillDir, spillThreshold, task);
+                }
+            }
+            queue.finish();
+            if(writtenEntries.add(JarFile.MANIFEST_NAME)) {
+                zout.write(ZipArchiveWriter.compress(JarFile.MANIFEST_NAME, JarUtils.writeManifest(null), compressionLevel));
+            }
+            JarUtils.addDirectories(JarFile.MANIFEST_NAME, dirs);
+            for(String dirPath : dirs) {
+                String dirEntryName = dirPath + "/";
+                if(writtenEntries.add(dirEntryName)) {
+                    zout.writeDirectory(dirEntryName);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            if(spillDir != null) {
+                deleteSpillDir(spillDir);
+            }
+        }
+        return remappedEntries.get();
+    }
+
+    /**
+     * Waits until {@code estimate} fits into the budget, then submits {@code task}. Its compressed output is spilled to
+     * {@code spillDir} if it is bigger than {@code spillThreshold}, and otherwise counts against the budget until written.
+     */
+    private static void submitWithinBudget(OrderedWorkQueue<RemappedEntry> queue, MemoryBudget budget, long estimate, Path spillDir, long spillThreshold, Callable<RemappedEntry> task) throws IOException {
+        queue.drainWhile(() -> !budget.fits(estimate));
+        budget.reserve(estimate);
+        queue.submit(() -> {
+            RemappedEntry remapped = task.call();
+            if(remapped.heapSize() > spillThreshold) {
+                remapped = new RemappedEntry(remapped.inputSize, remapped.record.spill(spillDir.toFile()), null, false).withNested(remapped.nested);
+            }
+            budget.reserve(remapped.heapSize());
+            budget.release(estimate);
+            return remapped;
+        });
+    }
+
+    /**
+     * @param nestedMemory The budget for the entries in flight of a nested jar, or 0 for no limit.
+     */
+    private static RemappedEntry remapEntry(ZipArchive zip, ZipArchive.Entry entry, MappingTable mappings, ClassTransformer transformer, int compressionLevel, long nestedMemory) throws IOException {
+        String name = entry.getName();
+        if(!name.endsWith(".class") && NestedJarRemapper.isNestedJar(name)) {
+            NestedJarRemapper.Result nested = NestedJarRemapper.remap(name, zip.read(entry), mappings, transformer, compressionLevel, nestedMemory, 1);
+            if(!nested.changed && ZipArchive.canCopyRaw(entry)) {
+                return new RemappedEntry(entry).withNested(nested);
+            }
+            return new RemappedEntry(entry.getCompressedSize(), ZipArchiveWriter.compress(name, nested.bytes, compressionLevel), null, false).withNested(nested);
+        }
+        JarUtils.LoadedEntry loaded = name.endsWith(".class") ? remapClassEntry(name, zip.read(entry), mappings, transformer) : new JarUtils.LoadedEntry(zip.read(entry), null, null, false);
+        if(loaded.error != null) {
+            return new RemappedEntry(entry.getCompressedSize(), null, loaded.error, loaded.warning);
+        }
+        if(loaded.unmapped && ZipArchive.canCopyRaw(entry)) {
+            return new RemappedEntry(entry);
+        }
+        return new RemappedEntry(entry.getCompressedSize(), ZipArchiveWriter.compress(name, loaded.bytes, compressionLevel), null, false);
+    }
+
+    /**
+     * Removes whatever a failed run left behind; after a successful one every spill file is already gone.
+     */
+    private static void deleteSpillDir(Path spillDir) {
+        try(Stream<Path> files = Files.list(spillDir)) {
+            files.forEach(file -> file.toFile().delete());
+        } catch(IOException e) {
+            // best effort, it's a temporary directory
+        }
+        spillDir.toFile().delete();
+    }
+
+    public static byte[] remapClass(byte[] bytes, MappingTable mappings) {
+        return remapClass(new ConstantPoolScanner(bytes), mappings);
+    }
+
+    public static byte[] remapClass(ConstantPoolScanner classFile, MappingTable mappings) {
+        ClassReader reader = new ClassReader(classFile.getBytes());
+        ClassWriter writer = new ClassWriter(0);
+        reader.accept(new RemappingClassVisitor(writer, mappings), 0);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Mirrors the checks {@link JarUtils#readFromJar} does on class entries.
+     */
+    static JarUtils.LoadedEntry remapClassEntry(String name, byte[] bytes, MappingTable mappings, ClassTransformer transformer) {
+        if(bytes.length == 0) {
+            return new JarUtils.LoadedEntry(null, null, "Found a class with no content. Corrupted JAR maybe?\nClass was:" + name + "\nThe class will be skipped.", true);
+        }
+        try {
+            ConstantPoolScanner scanner = new ConstantPoolScanner(bytes);
+            String className = scanner.getClassName();
+            if(!name.equals(className + ".class")) {
+                return new JarUtils.LoadedEntry(null, null, "There was an error in reading a class. Corrupted JAR maybe?\n" + name + " != " + className + ".class", false);
+            }
+            if(!scanner.hasMappedNames(mappings)) {
+                return JarUtils.LoadedEntry.unmapped(bytes);
+            }
+            return new JarUtils.LoadedEntry(transformer.transform(scanner, mappings), null, null, false);
+        } catch(Exception e) {
+            return new JarUtils.LoadedEntry(null, null, "There was an unexpected error while reading class data. Corrupted JAR maybe?\n" + name, false);
+        }
+    }
+
+    private static class RemappedEntry {
+        final long inputSize;
+        final ZipArchiveWriter.Record record;
+        final ZipArchive.Entry rawEntry;
+        final String error;
+        final boolean warning;
+        NestedJarRemapper.Result nested;
+
+        RemappedEntry(long inputSize, ZipArchiveWriter.Record record, String error, boolean warning) {
+            this.inputSize = inputSize;
+            this.record = record;
+            this.rawEntry = null;
+            this.error = error;
+            this.warning = warning;
+        }
+
+        /**
+         * An entry that is copied to the output still compressed.
+         */
+        RemappedEntry(ZipArchive.Entry rawEntry) {
+            this.inputSize = rawEntry.getCompressedSize();
+            this.record = null;
+            this.rawEntry = rawEntry;
+            this.error = null;
+            this.warning = false;
+        }
+
+        RemappedEntry withNested(NestedJarRemapper.Result nested) {
+            this.nested = nested;
+            return this;
+        }
+
+        /**
+         * @return How many bytes of output this entry holds on the heap until it is written.
+         */
+        long heapSize() {
+            return record != null && !record.isSpilled() ? record.getCompressedSize() : 0;
+        }
+    }
+}
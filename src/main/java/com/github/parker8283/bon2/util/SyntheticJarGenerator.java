@@ -0,0 +1,325 @@
+package com.github.parker8283.bon2.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.Deflater;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.github.parker8283.bon2.data.IProgressListener;
+import com.github.parker8283.bon2.data.RemapOptions;
+import com.github.parker8283.bon2.io.ZipArchiveWriter;
+import com.github.parker8283.bon2.srg.Repo;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * Writes jars that look like SRG-named mods, for benchmarks and scale tests that can't ship real ones.<br/>
+ * Every class has static {@code int} fields and static {@code (I)I} methods whose code is a straight line of field
+ * accesses, calls into other generated classes, constants and arithmetic, in a configurable {@link #setInstructionMix
+ * mix}. With a probability of {@link #setSrgDensity srgDensity}, each declared name and each reference is a
+ * {@code field_}/{@code func_} name from the mapping directory, otherwise a plain one. Resources of random or JSON content
+ * are mixed in between the classes.
+ * <p>
+ * Entries are generated and compressed on worker threads and written in order, so even a jar of hundreds of megabytes
+ * is never held in memory. Every entry has its own seed, so the same settings always give the same entries; only the timestamps differ.
+ */
+public class SyntheticJarGenerator {
+    public static final int FIELD = 0;
+    public static final int INVOKE = 1;
+    public static final int CONSTANT = 2;
+    public static final int ARITHMETIC = 3;
+    private static final String[] INSTRUCTION_KINDS = {"field", "invoke", "constant", "arithmetic"};
+
+    private final List<String> fields;
+    private final List<String> methods;
+    private int classes = 1000;
+    private int fieldsPerClass = 8;
+    private int methodsPerClass = 8;
+    private int instructionsPerMethod = 32;
+    private int[] instructionMix = {4, 4, 1, 2};
+    private double srgDensity = 0.75;
+    private double resourcesPerClass = 0.1;
+    private int resourceSize = 4096;
+    private long seed = 0;
+    private int threads = RemapOptions.DEFAULT_THREADS;
+
+    /**
+     * @param mappingsDir Where the SRG names come from, a directory with {@value Repo#FIELDS_CSV} and
+     *                    {@value Repo#METHODS_CSV}.
+     */
+    public SyntheticJarGenerator(File mappingsDir) throws IOException {
+        this.fields = readSrgNames(new File(mappingsDir, Repo.FIELDS_CSV), "field_");
+        this.methods = readSrgNames(new File(mappingsDir, Repo.METHODS_CSV), "func_");
+        if(fields.isEmpty() || methods.isEmpty()) {
+            throw new IOException("No SRG names found in " + mappingsDir);
+        }
+    }
+
+    public SyntheticJarGenerator setClasses(int classes) {
+        Preconditions.checkArgument(classes > 0, "Class count must be positive");
+        this.classes = classes;
+        return this;
+    }
+
+    public SyntheticJarGenerator setFieldsPerClass(int fieldsPerClass) {
+        Preconditions.checkArgument(fieldsPerClass > 0, "Field count must be positive");
+        this.fieldsPerClass = fieldsPerClass;
+        return this;
+    }
+
+    public SyntheticJarGenerator setMethodsPerClass(int methodsPerClass) {
+        Preconditions.checkArgument(methodsPerClass > 0, "Method count must be positive");
+        this.methodsPerClass = methodsPerClass;
+        return this;
+    }
+
+    public SyntheticJarGenerator setInstructionsPerMethod(int instructionsPerMethod) {
+        Preconditions.checkArgument(instructionsPerMethod > 0, "Instruction count must be positive");
+        this.instructionsPerMethod = instructionsPerMethod;
+        return this;
+    }
+
+    /**
+     * @param weights Relative weights of {@link #FIELD}, {@link #INVOKE}, {@link #CONSTANT} and {@link #ARITHMETIC}
+     *                instructions, in that order.
+     */
+    public SyntheticJarGenerator setInstructionMix(int... weights) {
+        Preconditions.checkArgument(weights.length == INSTRUCTION_KINDS.length, "Expected %s weights", INSTRUCTION_KINDS.length);
+        int total = 0;
+        for(int weight : weights) {
+            Preconditions.checkArgument(weight >= 0, "Weights must not be negative");
+            total += weight;
+        }
+        Preconditions.checkArgument(total > 0, "At least one weight must be positive");
+        this.instructionMix = weights.clone();
+        return this;
+    }
+
+    /**
+     * Parses a mix such as {@code "field=4,invoke=4,constant=1,arithmetic=2"}. Kinds that are left out get a weight of 0.
+     */
+    public SyntheticJarGenerator setInstructionMix(String mix) {
+        int[] weights = new int[INSTRUCTION_KINDS.length];
+        for(String part : mix.split(",")) {
+            String[] kindAndWeight = part.trim().split("=");
+            int kind = Lists.newArrayList(INSTRUCTION_KINDS).indexOf(kindAndWeight[0].trim().toLowerCase(Locale.ROOT));
+            Preconditions.checkArgument(kind >= 0 && kindAndWeight.length == 2, "Invalid instruction mix \"%s\", expected e.g. field=4,invoke=4,constant=1,arithmetic=2", mix);
+            try {
+                weights[kind] = Integer.parseInt(kindAndWeight[1].trim());
+            } catch(NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid weight in instruction mix: " + part);
+            }
+        }
+        return setInstructionMix(weights);
+    }
+
+    /**
+     * @param srgDensity How likely a name is an SRG one, from 0 (nothing to remap) to 1.
+     */
+    public SyntheticJarGenerator setSrgDensity(double srgDensity) {
+        Preconditions.checkArgument(srgDensity >= 0 && srgDensity <= 1, "SRG density must be between 0 and 1");
+        this.srgDensity = srgDensity;
+        return this;
+    }
+
+    /**
+     * @param resourcesPerClass How many resources there are for each class, e.g. 0.5 for one every second class.
+     */
+    public SyntheticJarGenerator setResourcesPerClass(double resourcesPerClass) {
+        Preconditions.checkArgument(resourcesPerClass >= 0, "Resource ratio must not be negative");
+        this.resourcesPerClass = resourcesPerClass;
+        return this;
+    }
+
+    /**
+     * @param resourceSize The average size of a resource in bytes. Sizes vary from half to one and a half times this.
+     */
+    public SyntheticJarGenerator setResourceSize(int resourceSize) {
+        Preconditions.checkArgument(resourceSize > 0, "Resource size must be positive");
+        this.resourceSize = resourceSize;
+        return this;
+    }
+
+    public SyntheticJarGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public SyntheticJarGenerator setThreads(int threads) {
+        Preconditions.checkArgument(threads > 0, "Thread count must be positive");
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Writes the jar to {@code output}.
+     * @return The size of the jar in bytes.
+     */
+    public long generate(File output, IProgressListener progress) throws IOException {
+        progress.start(classes, "Generating JAR");
+        AtomicInteger classesWritten = new AtomicInteger();
+        ExecutorService pool = ConcurrencyUtils.newWorkerPool(threads, "BON2 Generator");
+        try(ZipArchiveWriter zout = new ZipArchiveWriter(new BufferedOutputStream(new FileOutputStream(output)))) {
+            OrderedWorkQueue<ZipArchiveWriter.Record> queue = new OrderedWorkQueue<>(pool, threads * JarUtils.IN_FLIGHT_PER_THREAD, record -> {
+                zout.write(record);
+                if(record.getName().endsWith(".class")) {
+                    progress.setProgress(classesWritten.incrementAndGet());
+                }
+            });
+            Manifest manifest = new Manifest();
+            manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+            manifest.getMainAttributes().putValue("Created-By", "BON2 synthetic jar generator");
+            queue.add(ZipArchiveWriter.compress(JarFile.MANIFEST_NAME, JarUtils.writeManifest(manifest), Deflater.DEFAULT_COMPRESSION));
+            for(int i = 0; i < classes; i++) {
+                int index = i;
+                queue.submit(() -> ZipArchiveWriter.compress(getClassName(index) + ".class", createClass(index), Deflater.DEFAULT_COMPRESSION));
+                for(long r = (long)(i * resourcesPerClass); r < (long)((i + 1) * resourcesPerClass); r++) {
+                    long resource = r;
+                    queue.submit(() -> createResource(resource));
+                }
+            }
+            queue.finish();
+        } finally {
+            pool.shutdownNow();
+        }
+        return output.length();
+    }
+
+    private byte[] createClass(int index) {
+        Random random = new Random(seed * 31 + index);
+        String name = getClassName(index);
+        String[] fieldNames = new String[fieldsPerClass];
+        Set<String> declared = Sets.newHashSet();
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        writer.visitSource(name.substring(name.lastIndexOf('/') + 1) + ".java", null);
+        for(int i = 0; i < fieldNames.length; i++) {
+            fieldNames[i] = pickUniqueName(random, fields, "f" + i, declared);
+            writer.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, fieldNames[i], "I", null, null).visitEnd();
+        }
+        int totalWeight = 0;
+        for(int weight : instructionMix) {
+            totalWeight += weight;
+        }
+        for(int m = 0; m < methodsPerClass; m++) {
+            String methodName = pickUniqueName(random, methods, "m" + m, declared);
+            String paramName = methodName.startsWith("func_") ? "p_" + methodName.split("_")[1] + "_0_" : "value";
+            MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, methodName, "(I)I", null, null);
+            method.visitParameter(paramName, 0);
+            method.visitCode();
+            Label start = new Label();
+            method.visitLabel(start);
+            method.visitVarInsn(Opcodes.ILOAD, 0); // the running value, kept on the stack throughout
+            for(int i = 0; i < instructionsPerMethod; i++) {
+                int pick = random.nextInt(totalWeight);
+                int kind = 0;
+                while(pick >= instructionMix[kind]) {
+                    pick -= instructionMix[kind++];
+                }
+                switch(kind) {
+                    case FIELD:
+                        boolean own = random.nextInt(4) != 0;
+                        String field = own ? fieldNames[random.nextInt(fieldNames.length)] : pickName(random, fields, "f0");
+                        String owner = own ? name : getClassName(random.nextInt(classes));
+                        if(random.nextInt(3) == 0) {
+                            method.visitInsn(Opcodes.DUP);
+                            method.visitFieldInsn(Opcodes.PUTSTATIC, owner, field, "I");
+                        } else {
+                            method.visitFieldInsn(Opcodes.GETSTATIC, owner, field, "I");
+                            method.visitInsn(Opcodes.IADD);
+                        }
+                        break;
+                    case INVOKE:
+                        method.visitMethodInsn(Opcodes.INVOKESTATIC, getClassName(random.nextInt(classes)), pickName(random, methods, "m" + random.nextInt(methodsPerClass)), "(I)I", false);
+                        break;
+                    case CONSTANT:
+                        method.visitLdcInsn(random.nextBoolean() ? pickName(random, methods, "constant") : name + "#" + i);
+                        method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String", "length", "()I", false);
+                        method.visitInsn(Opcodes.IADD);
+                        break;
+                    case ARITHMETIC:
+                    default:
+                        method.visitIntInsn(Opcodes.SIPUSH, random.nextInt(Short.MAX_VALUE));
+                        method.visitInsn(random.nextBoolean() ? Opcodes.IXOR : Opcodes.IMUL);
+                        break;
+                }
+            }
+            method.visitInsn(Opcodes.IRETURN);
+            Label end = new Label();
+            method.visitLabel(end);
+            method.visitLocalVariable(paramName, "I", null, start, end, 0);
+            method.visitMaxs(0, 0);
+            method.visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private ZipArchiveWriter.Record createResource(long index) {
+        Random random = new Random(~(seed * 31 + index));
+        int size = resourceSize / 2 + random.nextInt(resourceSize + 1);
+        if(index % 2 == 0) {
+            byte[] data = new byte[size]; // like a texture: doesn't compress, so the jar gets as big as asked for
+            random.nextBytes(data);
+            return ZipArchiveWriter.compress("assets/synthetic/textures/r" + index + ".png", data, Deflater.DEFAULT_COMPRESSION);
+        }
+        StringBuilder json = new StringBuilder(size + 64).append("{\n");
+        while(json.length() < size) {
+            json.append("  \"").append(pickName(random, methods, "key")).append("\": ").append(random.nextInt()).append(",\n");
+        }
+        json.append("  \"index\": ").append(index).append("\n}\n");
+        return ZipArchiveWriter.compress("assets/synthetic/data/r" + index + ".json", json.toString().getBytes(StandardCharsets.UTF_8), Deflater.DEFAULT_COMPRESSION);
+    }
+
+    private String pickName(Random random, List<String> srgNames, String plainName) {
+        return random.nextDouble() < srgDensity ? srgNames.get(random.nextInt(srgNames.size())) : plainName;
+    }
+
+    /**
+     * Like {@link #pickName}, but never returns a name that is already in {@code declared}, so no class declares a member
+     * twice.
+     */
+    private String pickUniqueName(Random random, List<String> srgNames, String plainName, Set<String> declared) {
+        for(int attempt = 0; attempt < 8; attempt++) {
+            String name = pickName(random, srgNames, plainName);
+            if(declared.add(name)) {
+                return name;
+            }
+        }
+        declared.add(plainName);
+        return plainName; // plain names are numbered, so they are unique anyway
+    }
+
+    private static String getClassName(int index) {
+        return "synthetic/p" + index % 64 + "/Class" + index;
+    }
+
+    private static List<String> readSrgNames(File csv, String prefix) throws IOException {
+        List<String> names = Lists.newArrayList();
+        for(String line : Files.readAllLines(csv.toPath(), StandardCharsets.UTF_8)) {
+            int comma = line.indexOf(',');
+            if(comma > 0 && line.startsWith(prefix)) {
+                names.add(line.substring(0, comma));
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,125 @@
+package com.github.parker8283.bon2;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import com.github.parker8283.bon2.data.IErrorHandler;
+import com.github.parker8283.bon2.data.IProgressListener;
+import com.github.parker8283.bon2.data.MappingVersion;
+import com.github.parker8283.bon2.data.RemapOptions;
+import com.github.parker8283.bon2.util.CacheStats;
+import com.github.parker8283.bon2.util.ClassCache;
+import com.github.parker8283.bon2.util.JarCache;
+import com.github.parker8283.bon2.util.SyntheticJarGenerator;
+import com.google.common.collect.Lists;
+
+/**
+ * Remaps the same jar in several jobs at once with the class cache and then the jar cache, like a batch or the server
+ * does, and checks that every job succeeds and the cache stats count every lookup.
+ * Run with: java -cp BON-all.jar:test-classes com.github.parker8283.bon2.CacheConcurrencyTest mappings/1.12.2
+ */
+public class CacheConcurrencyTest {
+    private static final int JOBS = 8;
+    private static final int CLASSES = 50;
+
+    public static void main(String[] args) throws Exception {
+        if(args.length < 1) {
+            System.err.println("Usage: CacheConcurrencyTest <mappingsDir>");
+            System.exit(2);
+        }
+        File mappingsDir = new File(args[0]);
+        MappingVersion mappings = new MappingVersion("custom", mappingsDir);
+        File work = Files.createTempDirectory("bon2-cache-test").toFile();
+        File input = new File(work, "input.jar");
+        new SyntheticJarGenerator(mappingsDir).setClasses(CLASSES).setResourcesPerClass(0).generate(input, NO_PROGRESS);
+
+        int failed = 0;
+        File classCache = new File(work, "classes");
+        failed += check("class cache", mappings, input, work, new RemapOptions().setClassCacheDir(classCache), () -> ClassCache.getStats(classCache));
+        File jarCache = new File(work, "jars");
+        failed += check("jar cache", mappings, input, work, new RemapOptions().setJarCacheDir(jarCache), () -> JarCache.getStats(jarCache));
+
+        delete(work);
+        System.out.println(failed == 0 ? "PASSED" : "FAILED");
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    private static int run(MappingVersion mappings, File input, File work, RemapOptions options, int jobs) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(jobs);
+        List<Future<?>> results = Lists.newArrayList();
+        for(int i = 0; i < jobs; i++) {
+            File output = new File(work, "output" + i + ".jar");
+            results.add(pool.submit(() -> {
+                BON2Impl.remap(input, output, mappings, options.copy().setThreads(1), NO_ERRORS, NO_PROGRESS);
+                return null;
+            }));
+        }
+        int failed = 0;
+        for(Future<?> result : results) {
+            try {
+                result.get();
+            } catch(Exception e) {
+                System.out.println("  job failed: " + e.getCause());
+                failed++;
+            }
+        }
+        pool.shutdown();
+        return failed;
+    }
+
+    /**
+     * Remaps once on its own to learn how many lookups a run makes, then {@link #JOBS} times at once.
+     * @return 1 if a job failed or lookups went uncounted.
+     */
+    private static int check(String name, MappingVersion mappings, File input, File work, RemapOptions options, Supplier<CacheStats> stats) throws InterruptedException {
+        int failed = run(mappings, input, work, options, 1);
+        long perRun = getLookups(stats.get());
+        failed += run(mappings, input, work, options, JOBS);
+        long lookups = getLookups(stats.get());
+        System.out.println(String.format("%s: %d of %d jobs failed, %d lookups counted (expected %d)", name, failed, JOBS + 1, lookups, perRun * (JOBS + 1)));
+        return failed == 0 && perRun > 0 && lookups == perRun * (JOBS + 1) ? 0 : 1;
+    }
+
+    private static long getLookups(CacheStats stats) {
+        return stats.getHits() + stats.getMisses();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if(children != null) {
+            for(File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static final IErrorHandler NO_ERRORS = (message, warning) -> false;
+
+    private static final IProgressListener NO_PROGRESS = new IProgressListener() {
+        @Override
+        public void start(int max, String label) {
+        }
+
+        @Override
+        public void startWithoutProgress(String label) {
+        }
+
+        @Override
+        public void setProgress(int value) {
+        }
+
+        @Override
+        public void setMax(int max) {
+        }
+
+        @Override
+        public void setLabel(String label) {
+        }
+    };
+}
@@ -0,0 +1,69 @@
+package com.github.parker8283.bon2;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.parker8283.bon2.cli.CLIProgressListener;
+import com.github.parker8283.bon2.io.ZipArchive;
+import com.github.parker8283.bon2.srg.MappingTable;
+import com.github.parker8283.bon2.srg.Repo;
+import com.github.parker8283.bon2.util.ConstantPoolRemapper;
+import com.github.parker8283.bon2.util.IOUtils;
+import com.github.parker8283.bon2.util.Remapper;
+import com.github.parker8283.bon2.util.StreamingRemapper;
+
+/**
+ * Compares the per-class throughput of the remap engines on the classes of a jar, with I/O and compression left out.
+ * Run with: java -cp BON-all.jar:test-classes com.github.parker8283.bon2.EngineBenchmark input.jar mappings/1.12.2 [rounds]
+ */
+public class EngineBenchmark {
+
+    private interface Engine {
+        byte[] remap(byte[] bytes);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: EngineBenchmark <input.jar> <mappings dir> [rounds]");
+            System.exit(1);
+        }
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        MappingTable mappings = Repo.loadMappings(new File(args[1]), new CLIProgressListener());
+
+        List<byte[]> classes = new ArrayList<>();
+        try (ZipArchive zip = new ZipArchive(new File(args[0]))) {
+            for (ZipArchive.Entry entry : zip.getEntries()) {
+                if (entry.getName().endsWith(".class")) {
+                    classes.add(zip.read(entry));
+                }
+            }
+        }
+        System.out.println("Classes: " + classes.size() + ", rounds: " + rounds);
+
+        run("tree", classes, rounds, bytes -> {
+            org.objectweb.asm.tree.ClassNode node = IOUtils.readClassFromBytes(bytes);
+            Remapper.remapClass(node, mappings);
+            return IOUtils.writeClassToBytes(node);
+        });
+        run("streaming", classes, rounds, bytes -> StreamingRemapper.remapClass(bytes, mappings));
+        run("constant-pool", classes, rounds, bytes -> ConstantPoolRemapper.remapClass(bytes, mappings));
+    }
+
+    private static void run(String name, List<byte[]> classes, int rounds, Engine engine) {
+        long sink = 0;
+        for (int i = 0; i < Math.max(1, rounds / 2); i++) { // warm up
+            for (byte[] bytes : classes) {
+                sink += engine.remap(bytes).length;
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            for (byte[] bytes : classes) {
+                sink += engine.remap(bytes).length;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-14s %12.0f classes/s  (%d)%n", name, classes.size() * (double) rounds / seconds, sink);
+    }
+}